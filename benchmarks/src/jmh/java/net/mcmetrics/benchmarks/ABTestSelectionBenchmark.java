@@ -0,0 +1,38 @@
+package net.mcmetrics.benchmarks;
+
+import net.mcmetrics.plugin.ABTestManager;
+import net.mcmetrics.shared.models.ABTest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * ABTestManager.selectVariant, which runs for every active test on every join or purchase.
+ */
+@State(Scope.Thread)
+public class ABTestSelectionBenchmark {
+    private static final int PLAYERS = 1024;
+
+    @Param({"2", "4"})
+    public int variants;
+
+    private ABTestManager manager;
+    private ABTest test;
+    private List<UUID> players;
+    private int index;
+
+    @Setup
+    public void setup() {
+        // selectVariant doesn't touch the plugin
+        manager = new ABTestManager(null, Logger.getLogger("ABTestSelectionBenchmark"));
+        test = Fixtures.abTest(variants);
+        players = Fixtures.uuids(PLAYERS, 11);
+    }
+
+    @Benchmark
+    public ABTest.ABTestVariant selectVariant() {
+        return manager.selectVariant(test, players.get(index++ & (PLAYERS - 1)));
+    }
+}
@@ -0,0 +1,112 @@
+package net.mcmetrics.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A console log stream shaped like a busy survival server, and console-pattern values like the ones
+ * admins configure. Well under 1% of the lines match any pattern.
+ */
+public final class ConsoleLogCorpus {
+    private ConsoleLogCorpus() {
+    }
+
+    // The shipped example first, then patterns for common plugins' messages
+    public static final List<String> PATTERNS = Arrays.asList(
+            "(.+) issued server command: (.*)",
+            "(\\w+) has made the advancement \\[(.+)\\]",
+            "(\\w+) has completed the challenge \\[(.+)\\]",
+            "(\\w+) has reached the goal \\[(.+)\\]",
+            "(\\w+) was slain by (\\w+)",
+            "(\\w+) was shot by (\\w+)",
+            "(\\w+) fell from a high place",
+            "(\\w+) drowned",
+            "(\\w+) tried to swim in lava",
+            "(\\w+) was blown up by (.+)",
+            "\\[Jobs\\] (\\w+) reached level (\\d+) in (\\w+)",
+            "\\[mcMMO\\] (\\w+) reached (\\w+) level (\\d+)",
+            "\\[Votifier\\] Got a protocol v2 vote record from .+ -> Vote \\(from:(.+) username:(\\w+).*",
+            "\\[Crates\\] (\\w+) opened a (\\w+) crate and won (.+)",
+            "\\[Shop\\] (\\w+) bought (\\d+) (\\w+) for \\$(\\d+\\.?\\d*)",
+            "\\[Shop\\] (\\w+) sold (\\d+) (\\w+) for \\$(\\d+\\.?\\d*)",
+            "\\[AuctionHouse\\] (\\w+) listed (.+) for \\$(\\d+)",
+            "\\[AuctionHouse\\] (\\w+) purchased (.+) from (\\w+)",
+            "\\[Quests\\] (\\w+) completed quest (.+)",
+            "\\[Quests\\] (\\w+) started quest (.+)",
+            "\\[Duels\\] (\\w+) won a duel against (\\w+)",
+            "\\[KoTH\\] (\\w+) captured (\\w+)",
+            "\\[Envoy\\] (\\w+) claimed an envoy crate",
+            "\\[Parkour\\] (\\w+) finished (\\w+) in (\\d+\\.\\d+)s",
+            "\\[BedWars\\] (\\w+) won a game of (\\w+)",
+            "\\[SkyWars\\] (\\w+) won on map (\\w+)",
+            "\\[Towny\\] (\\w+) created a new town called (\\w+)",
+            "\\[Towny\\] (\\w+) joined the town of (\\w+)",
+            "\\[Lands\\] (\\w+) claimed a chunk in (\\w+)",
+            "\\[Clans\\] (\\w+) created clan (\\w+)",
+            "\\[Rankup\\] (\\w+) ranked up to (\\w+)",
+            "\\[LuckPerms\\] (\\w+) was promoted to (\\w+)",
+            "\\[Referral\\] (\\w+) was referred by (\\w+)",
+            "\\[DailyRewards\\] (\\w+) claimed day (\\d+)",
+            "\\[Battlepass\\] (\\w+) reached tier (\\d+)",
+            "\\[Fishing\\] (\\w+) caught a (\\w+) fish",
+            "\\[Mining\\] (\\w+) found (\\d+) diamonds",
+            "\\[Bounty\\] (\\w+) claimed the bounty on (\\w+)",
+            "\\[Lottery\\] (\\w+) won \\$(\\d+)",
+            "\\[Tebex\\] Executing command for (\\w+): (.+)");
+
+    private static final String[] NAMES = {"Notch", "jeb_", "Dinnerbone", "Grumm", "xX_Sniper_Xx", "Steve",
+            "Alex", "Technoblade", "Dream", "Hypixel", "builder42", "redstone_wiz"};
+
+    private static final String[] NOISE = {
+            "%s joined the game",
+            "%s left the game",
+            "UUID of player %s is 069a79f4-44e9-4726-a5be-fca90e38aaf5",
+            "%s[/203.0.113.42:51234] logged in with entity id 1234 at ([world]10.5, 64.0, -20.3)",
+            "%s lost connection: Disconnected",
+            "Can't keep up! Is the server overloaded? Running 2034ms or 40 ticks behind",
+            "Saving the game (this may take a moment!)",
+            "Saved the game",
+            "<%s> anyone selling elytras?",
+            "<%s> gg",
+            "[Essentials] %s has been teleported to spawn",
+            "[WorldGuard] %s was denied permission to break blocks in region spawn",
+            "[CoreProtect] Data rollback completed in 0.4s",
+            "[dynmap] Finished full render of map 'flat' in world 'world' (6 tiles)",
+            "[ViaVersion] %s is using protocol 763",
+            "[Geyser] %s has connected to the Java server",
+            "[LuckPerms] Running scheduled sync task",
+            "Villager Villager['Villager'/532, l='ServerLevel[world]', x=10.50, y=64.00, z=-20.30] died",
+            "[PlaceholderAPI] Successfully registered expansion: player",
+            "Mismatch in destroy block pos: BlockPosition{x=1, y=2, z=3} BlockPosition{x=1, y=2, z=4}",
+    };
+
+    private static final String[] SIGNAL = {
+            "%s issued server command: /home base",
+            "%s has made the advancement [Diamonds!]",
+            "[Shop] %s bought 64 DIAMOND for $1200.50",
+            "%s was slain by Zombie",
+    };
+
+    /**
+     * @param matchEvery one line in this many is one that a pattern matches
+     */
+    public static List<String> lines(int count, int matchEvery) {
+        Random random = new Random(7);
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = NAMES[random.nextInt(NAMES.length)];
+            String template = random.nextInt(matchEvery) == 0
+                    ? SIGNAL[random.nextInt(SIGNAL.length)]
+                    : NOISE[random.nextInt(NOISE.length)];
+            String line = String.format(template, name);
+            // Some plugins log through their own formatter, with the timestamp in the message
+            if (random.nextInt(10) == 0) {
+                line = "[12:34:" + (10 + random.nextInt(50)) + " INFO]: " + line;
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,95 @@
+package net.mcmetrics.benchmarks;
+
+import net.mcmetrics.plugin.listeners.ConsoleEventMatcher;
+import net.mcmetrics.plugin.listeners.ConsoleEventMatcher.ConsoleEventConfig;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The whole per-line cost of console events, from the log4j message to a match: what the appender
+ * and the matcher thread in ConsoleEventListener do together. Lines come from the corpus with the
+ * logger and level the server would have logged them under, and every event only listens to INFO
+ * lines, as the vanilla ones would be configured with console-levels.
+ */
+@State(Scope.Thread)
+public class ConsoleLogEventBenchmark {
+    private static final int LINES = 4096;
+    private static final String SERVER_LOGGER = "net.minecraft.server.MinecraftServer";
+
+    private ConsoleEventMatcher matcher;
+    private List<Line> lines;
+    private int index;
+
+    @Setup
+    public void setup() {
+        Logger logger = Logger.getLogger("ConsoleLogEventBenchmark");
+        logger.setLevel(java.util.logging.Level.OFF);
+        matcher = new ConsoleEventMatcher(logger);
+        for (int i = 0; i < ConsoleLogCorpus.PATTERNS.size(); i++) {
+            matcher.addPattern(Pattern.compile(ConsoleLogCorpus.PATTERNS.get(i)),
+                    new ConsoleEventConfig("event_" + i, 1, Collections.emptyList(), null,
+                            Collections.singleton("INFO")));
+        }
+
+        // Plugins log through their own logger, and a good share of a busy console is warnings
+        Random random = new Random(11);
+        lines = new ArrayList<>(LINES);
+        for (String text : ConsoleLogCorpus.lines(LINES, 200)) {
+            String loggerName = SERVER_LOGGER;
+            if (text.startsWith("[") && text.indexOf(']') > 1 && !Character.isDigit(text.charAt(1))) {
+                loggerName = text.substring(1, text.indexOf(']'));
+            }
+            Level level = random.nextInt(4) == 0 ? Level.WARN : Level.INFO;
+            lines.add(new Line(loggerName, level, text));
+        }
+    }
+
+    // Every line formatted and matched, as before logger and level filtering
+    @Benchmark
+    public ConsoleEventMatcher.Match formatEveryLine() {
+        Line line = lines.get(index++ & (LINES - 1));
+        Message message = line.message();
+        return matcher.match(message.getFormattedMessage());
+    }
+
+    @Benchmark
+    public ConsoleEventMatcher.Match filterThenFormat() {
+        Line line = lines.get(index++ & (LINES - 1));
+        Message message = line.message();
+        String level = line.level.name();
+        if (!matcher.acceptsSource(line.loggerName, level)) {
+            return null;
+        }
+        return matcher.match(line.loggerName, level, message.getFormattedMessage());
+    }
+
+    private static class Line {
+        final String loggerName;
+        final Level level;
+        final String format;
+        final Object[] parameters;
+
+        Line(String loggerName, Level level, String text) {
+            this.loggerName = loggerName;
+            this.level = level;
+            // Split the line back into a format and its arguments, the way a plugin would log it
+            String[] words = text.split(" ", 2);
+            this.format = words.length > 1 ? "{} " + words[1] : "{}";
+            this.parameters = new Object[] {words[0]};
+        }
+
+        // A new message per line, formatted messages are cached on the message
+        Message message() {
+            return new ParameterizedMessage(format, parameters);
+        }
+    }
+}
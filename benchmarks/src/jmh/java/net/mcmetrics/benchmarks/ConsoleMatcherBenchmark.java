@@ -0,0 +1,44 @@
+package net.mcmetrics.benchmarks;
+
+import net.mcmetrics.plugin.listeners.ConsoleEventMatcher;
+import net.mcmetrics.plugin.listeners.ConsoleEventMatcher.ConsoleEventConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The matching done by ConsoleEventListener.processConsoleMessage for every console line, over a
+ * recorded-style log stream where about one line in 200 is an event.
+ */
+@State(Scope.Thread)
+public class ConsoleMatcherBenchmark {
+    private static final int LINES = 4096;
+
+    @Param({"1", "10", "40"})
+    public int patterns;
+
+    private ConsoleEventMatcher matcher;
+    private List<String> lines;
+    private int index;
+
+    @Setup
+    public void setup() {
+        Logger logger = Logger.getLogger("ConsoleMatcherBenchmark");
+        logger.setLevel(Level.OFF);
+        matcher = new ConsoleEventMatcher(logger);
+        for (int i = 0; i < patterns; i++) {
+            matcher.addPattern(Pattern.compile(ConsoleLogCorpus.PATTERNS.get(i)),
+                    new ConsoleEventConfig("event_" + i, 1, Collections.emptyList()));
+        }
+        lines = ConsoleLogCorpus.lines(LINES, 200);
+    }
+
+    @Benchmark
+    public ConsoleEventMatcher.Match processConsoleMessage() {
+        return matcher.match(lines.get(index++ & (LINES - 1)));
+    }
+}
@@ -0,0 +1,59 @@
+package net.mcmetrics.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import net.mcmetrics.shared.models.CustomEvent;
+import net.mcmetrics.shared.pipeline.RollupTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+
+/**
+ * What a high-frequency custom event costs: counted into the rollup table on the thread that records
+ * it, next to building the CustomEvent and its JSON tree as every individually sent event needs.
+ */
+@State(Scope.Benchmark)
+public class CustomEventRollupBenchmark {
+    private static final int PLAYERS = 100;
+    private static final String[] BY = {"block"};
+    private static final String[] BLOCKS = {"STONE", "DIRT", "DEEPSLATE", "COAL_ORE", "IRON_ORE", "GRAVEL"};
+
+    private final UUID[] players = new UUID[PLAYERS];
+    private final Gson gson = new Gson();
+    private RollupTable rollups;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(5);
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        rollups = new RollupTable(8192);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean rollup(Cursor cursor) {
+        int i = cursor.index++;
+        return rollups.increment(players[i % PLAYERS], "block_broken", BY,
+                new Object[] {BLOCKS[i % BLOCKS.length]});
+    }
+
+    @Benchmark
+    @Threads(4)
+    public JsonElement individual(Cursor cursor) {
+        int i = cursor.index++;
+        CustomEvent event = new CustomEvent();
+        event.player_uuid = players[i % PLAYERS];
+        event.event_type = "block_broken";
+        event.timestamp = new Date();
+        event.metadata = new HashMap<>();
+        event.metadata.put("block", BLOCKS[i % BLOCKS.length]);
+        return gson.toJsonTree(event);
+    }
+}
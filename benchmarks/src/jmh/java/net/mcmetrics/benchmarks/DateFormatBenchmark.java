@@ -0,0 +1,90 @@
+package net.mcmetrics.benchmarks;
+
+import com.google.gson.stream.JsonWriter;
+import net.mcmetrics.shared.json.UtcDateAdapter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * UtcDateAdapter against the SimpleDateFormat it replaced. "now" is the common case of events stamped
+ * with the current time; "spread" are timestamps scattered over a day, like sessions being uploaded.
+ * The SimpleDateFormat variant is synchronized, the cheapest way to make the old code thread-safe.
+ */
+@State(Scope.Benchmark)
+public class DateFormatBenchmark {
+    private static final int DATES = 1024;
+
+    @Param({"now", "spread"})
+    public String timestamps;
+
+    private final UtcDateAdapter adapter = new UtcDateAdapter();
+    private final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    private final Date[] dates = new Date[DATES];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+        final StringWriter buffer = new StringWriter();
+        final JsonWriter writer = new JsonWriter(buffer);
+
+        public Cursor() {
+            // Lenient allows one bare value after another
+            writer.setLenient(true);
+        }
+
+        Date next(Date[] dates) {
+            return dates[index++ & (DATES - 1)];
+        }
+
+        JsonWriter writer() {
+            buffer.getBuffer().setLength(0);
+            return writer;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long now = System.currentTimeMillis();
+        Random random = new Random(42);
+        for (int i = 0; i < DATES; i++) {
+            dates[i] = new Date(timestamps.equals("now") ? now : now - random.nextInt(86400000));
+        }
+    }
+
+    @Benchmark
+    public StringWriter utcDateAdapter(Cursor cursor) throws IOException {
+        JsonWriter writer = cursor.writer();
+        adapter.write(writer, cursor.next(dates));
+        return cursor.buffer;
+    }
+
+    @Benchmark
+    public StringWriter simpleDateFormat(Cursor cursor) throws IOException {
+        JsonWriter writer = cursor.writer();
+        String formatted;
+        synchronized (simpleDateFormat) {
+            formatted = simpleDateFormat.format(cursor.next(dates));
+        }
+        writer.value(formatted);
+        return cursor.buffer;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public StringWriter utcDateAdapterContended(Cursor cursor) throws IOException {
+        return utcDateAdapter(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public StringWriter simpleDateFormatContended(Cursor cursor) throws IOException {
+        return simpleDateFormat(cursor);
+    }
+}
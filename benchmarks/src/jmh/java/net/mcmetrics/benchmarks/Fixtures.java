@@ -0,0 +1,139 @@
+package net.mcmetrics.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import net.mcmetrics.shared.json.UtcDateAdapter;
+import net.mcmetrics.shared.models.*;
+
+import java.util.*;
+
+/**
+ * Realistic sample data shared by the benchmarks. Everything is seeded, so runs are comparable.
+ */
+public final class Fixtures {
+    private Fixtures() {
+    }
+
+    // Configured like the Gson instance inside MCMetricsAPI
+    public static Gson gson() {
+        return new GsonBuilder()
+                .registerTypeAdapter(Date.class, new UtcDateAdapter())
+                .create();
+    }
+
+    public static List<UUID> uuids(int count, long seed) {
+        Random random = new Random(seed);
+        List<UUID> uuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uuids.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        return uuids;
+    }
+
+    public static ServerPing serverPing() {
+        ServerPing ping = new ServerPing();
+        ping.time = new Date();
+        ping.player_count = 142;
+        ping.java_player_count = 120;
+        ping.bedrock_player_count = 22;
+        return ping;
+    }
+
+    public static Session session() {
+        Session session = new Session();
+        session.player_uuid = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+        session.player_username = "Notch";
+        session.session_start = new Date(System.currentTimeMillis() - 3600000);
+        session.session_end = new Date();
+        session.domain = "play.example.com";
+        session.afk_time_ms = 120000L;
+        session.ip_address = "203.0.113.42";
+        session.ab_test_exposures = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            ABTestExposure exposure = new ABTestExposure();
+            exposure.ab_test_id = "6f1c2a3e-7d51-4b0e-9a44-0c6f1d2e3b4" + i;
+            exposure.variant_name = i == 0 ? "control" : "discount-banner";
+            session.ab_test_exposures.add(exposure);
+        }
+        return session;
+    }
+
+    public static Payment payment() {
+        Payment payment = new Payment();
+        payment.transaction_id = "tbx-20241031-8f2k4j";
+        payment.player_uuid = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+        payment.platform = "tebex";
+        payment.amount = 19.99;
+        payment.currency = "USD";
+        payment.datetime = new Date();
+        return payment;
+    }
+
+    public static CustomEvent customEvent() {
+        CustomEvent event = new CustomEvent();
+        event.player_uuid = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+        event.event_type = "command_executed";
+        event.timestamp = new Date();
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("command", "/warp spawn");
+        event.metadata = metadata;
+        return event;
+    }
+
+    public static ChatMessage chatMessage() {
+        ChatMessage message = new ChatMessage();
+        message.player_uuid = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+        message.player_username = "Notch";
+        message.message = "anyone want to trade diamonds for an elytra?";
+        return message;
+    }
+
+    public static ABTest abTest(int variants) {
+        ABTest test = new ABTest();
+        test.id = UUID.fromString("6f1c2a3e-7d51-4b0e-9a44-0c6f1d2e3b40");
+        test.name = "Join message";
+        test.trigger = ABTest.TriggerType.Join;
+        test.created_at = new Date();
+        test.variants = new ArrayList<>();
+        for (int i = 0; i < variants; i++) {
+            ABTest.ABTestVariant variant = new ABTest.ABTestVariant();
+            variant.name = i == 0 ? "control" : "variant-" + i;
+            variant.action = i == 0 ? ABTest.ABTestVariant.ActionType.Control
+                    : ABTest.ABTestVariant.ActionType.PlayerMessage;
+            variant.weight = 100 / variants;
+            variant.payload = i == 0 ? "" : "Welcome ${player}! Check out /shop for deal #" + i;
+            test.variants.add(variant);
+        }
+        return test;
+    }
+
+    public static ABTestResponse abTestResponse() {
+        ABTestResponse response = new ABTestResponse();
+        response.success = true;
+        response.data = new ABTestResponse.Data();
+        response.data.ab_tests = Arrays.asList(abTest(2), abTest(3), abTest(4));
+        return response;
+    }
+
+    // A full batch as the EventBatcher sends it: mostly chat and custom events
+    public static EventBatch eventBatch(int size) {
+        EventBatch batch = new EventBatch();
+        batch.events = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (i % 2 == 0) {
+                batch.events.add(new EventBatch.Entry("chat_message", chatMessage()));
+            } else {
+                batch.events.add(new EventBatch.Entry("custom_event", customEvent()));
+            }
+        }
+        return batch;
+    }
+
+    public static SessionBatch sessionBatch(int size) {
+        List<Session> sessions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sessions.add(session());
+        }
+        return new SessionBatch(sessions);
+    }
+}
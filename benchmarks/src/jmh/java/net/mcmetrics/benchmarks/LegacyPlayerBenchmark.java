@@ -0,0 +1,69 @@
+package net.mcmetrics.benchmarks;
+
+import net.mcmetrics.plugin.LegacyPlayerManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * LegacyPlayerManager.isKnownPlayer, checked on every join, with a legacy list the size of an
+ * established server's player base.
+ */
+@State(Scope.Benchmark)
+public class LegacyPlayerBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"10000", "100000"})
+    public int knownPlayers;
+
+    private File dataFolder;
+    private LegacyPlayerManager manager;
+    private List<UUID> known;
+    private List<UUID> unknown;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        known = Fixtures.uuids(knownPlayers, 1);
+        unknown = Fixtures.uuids(QUERIES, 2);
+
+        dataFolder = Files.createTempDirectory("mcmetrics-legacy").toFile();
+        try (Writer writer = Files.newBufferedWriter(new File(dataFolder, "legacy_players.json").toPath())) {
+            Fixtures.gson().toJson(new HashSet<>(known), writer);
+        }
+        manager = new LegacyPlayerManager(dataFolder, Logger.getLogger("LegacyPlayerBenchmark"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(dataFolder, "legacy_players.json").delete();
+        dataFolder.delete();
+    }
+
+    @Benchmark
+    public boolean knownPlayer(Cursor cursor) {
+        return manager.isKnownPlayer(known.get(cursor.index++ % QUERIES));
+    }
+
+    @Benchmark
+    public boolean unknownPlayer(Cursor cursor) {
+        return manager.isKnownPlayer(unknown.get(cursor.index++ & (QUERIES - 1)));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean knownPlayerContended(Cursor cursor) {
+        return knownPlayer(cursor);
+    }
+}
@@ -0,0 +1,101 @@
+package net.mcmetrics.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import net.mcmetrics.shared.transport.JsonRequestBody;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gson serialization of every model the API sends or receives, along the steps an event takes:
+ * toJsonTree when it is queued and written to the outbox, then the request body written to the
+ * connection. legacyRequestBody is the String + byte[] copy the body used to go through.
+ */
+@State(Scope.Thread)
+public class ModelSerializationBenchmark {
+
+    @Param({"ServerPing", "Session", "Payment", "CustomEvent", "ChatMessage", "ABTestResponse", "EventBatch",
+            "SessionBatch"})
+    public String model;
+
+    private final Gson gson = Fixtures.gson();
+    private final CountingOutputStream out = new CountingOutputStream();
+    private Object data;
+    private JsonElement tree;
+
+    @Setup
+    public void setup() {
+        switch (model) {
+            case "ServerPing":
+                data = Fixtures.serverPing();
+                break;
+            case "Session":
+                data = Fixtures.session();
+                break;
+            case "Payment":
+                data = Fixtures.payment();
+                break;
+            case "CustomEvent":
+                data = Fixtures.customEvent();
+                break;
+            case "ChatMessage":
+                data = Fixtures.chatMessage();
+                break;
+            case "ABTestResponse":
+                data = Fixtures.abTestResponse();
+                break;
+            case "EventBatch":
+                data = Fixtures.eventBatch(50);
+                break;
+            case "SessionBatch":
+                data = Fixtures.sessionBatch(50);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown model: " + model);
+        }
+        tree = gson.toJsonTree(data);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return gson.toJson(data);
+    }
+
+    @Benchmark
+    public JsonElement toJsonTree() {
+        return gson.toJsonTree(data);
+    }
+
+    @Benchmark
+    public long requestBody() throws IOException {
+        JsonRequestBody body = new JsonRequestBody(gson, tree);
+        long length = body.contentLength();
+        body.writeTo(out);
+        return length + out.count;
+    }
+
+    @Benchmark
+    public long legacyRequestBody() throws IOException {
+        byte[] bytes = gson.toJson(tree).getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        return bytes.length + out.count;
+    }
+
+    // Stands in for the connection, keeps the writes from being optimized away
+    static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
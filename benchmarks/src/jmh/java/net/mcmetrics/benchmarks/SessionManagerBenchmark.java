@@ -0,0 +1,110 @@
+package net.mcmetrics.benchmarks;
+
+import net.mcmetrics.shared.models.CustomEvent;
+import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.session.SessionManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The SessionManager with joins and quits, lookups and event recording happening at the same time
+ * from several threads, as with async listeners and commands on a busy server.
+ */
+@State(Scope.Group)
+public class SessionManagerBenchmark {
+    private static final int ONLINE = 512;
+
+    private SessionManager sessionManager;
+    private List<UUID> online;
+
+    @State(Scope.Thread)
+    public static class Churn {
+        List<UUID> players;
+        int index;
+
+        @Setup
+        public void setup() {
+            // Distinct players per thread, so a quit never races another thread's join of the same player
+            players = Fixtures.uuids(256, Thread.currentThread().getId());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+        int index;
+    }
+
+    @State(Scope.Thread)
+    public static class Recorder {
+        final UUID player = UUID.randomUUID();
+        int events;
+    }
+
+    @Setup
+    public void setup() {
+        sessionManager = new SessionManager();
+        online = Fixtures.uuids(ONLINE, 5);
+        for (UUID player : online) {
+            sessionManager.startSession(player, session(player));
+            // A while into the session, with a full ring of recent events over a few types
+            for (int i = 0; i < 256; i++) {
+                CustomEvent event = new CustomEvent();
+                event.player_uuid = player;
+                event.event_type = "event_" + (i & 7);
+                event.timestamp = new Date();
+                sessionManager.addCustomEvent(player, event);
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Session joinAndQuit(Churn churn) {
+        UUID player = churn.players.get(churn.index++ & 255);
+        sessionManager.startSession(player, session(player));
+        return sessionManager.endSession(player);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public Session getSession(Reader reader) {
+        return sessionManager.getSession(online.get(reader.index++ & (ONLINE - 1)));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Map<String, Long> groupedCustomEvents(Reader reader) {
+        return sessionManager.getGroupedCustomEvents(online.get(reader.index++ & (ONLINE - 1)));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public long addCustomEvent(Recorder recorder) {
+        // Rejoin now and then, as players do
+        if (recorder.events++ % 1000 == 0) {
+            sessionManager.startSession(recorder.player, session(recorder.player));
+        }
+        CustomEvent event = new CustomEvent();
+        event.player_uuid = recorder.player;
+        event.event_type = "block_break";
+        event.timestamp = new Date();
+        sessionManager.addCustomEvent(recorder.player, event);
+        return sessionManager.getState(recorder.player).getCustomEventCount();
+    }
+
+    private static Session session(UUID player) {
+        Session session = new Session();
+        session.player_uuid = player;
+        session.player_username = "Player";
+        session.session_start = new Date();
+        return session;
+    }
+}
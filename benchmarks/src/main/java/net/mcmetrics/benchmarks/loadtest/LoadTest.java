@@ -0,0 +1,242 @@
+package net.mcmetrics.benchmarks.loadtest;
+
+import net.mcmetrics.benchmarks.mock.FaultProfile;
+import net.mcmetrics.benchmarks.mock.MockIngestServer;
+import net.mcmetrics.shared.ApiSettings;
+import net.mcmetrics.shared.MCMetricsAPI;
+import net.mcmetrics.shared.metrics.LatencyHistogram;
+import net.mcmetrics.shared.models.ChatMessage;
+import net.mcmetrics.shared.models.CustomEvent;
+import net.mcmetrics.shared.models.ServerPing;
+import net.mcmetrics.shared.models.Session;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drives MCMetricsAPI at a fixed event rate against the {@link MockIngestServer}, once per fault
+ * profile, and prints throughput, completion latency and resource usage for each run.
+ *
+ * Usage: LoadTest [events] [events per second] [profile...]
+ */
+public class LoadTest {
+    private static final long DRAIN_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int eventsPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        List<FaultProfile> profiles = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            profiles.add(FaultProfile.fromString(args[i]));
+        }
+        if (profiles.isEmpty()) {
+            profiles = FaultProfile.all();
+        }
+
+        System.out.println("Sending " + events + " events at " + eventsPerSecond + "/s per profile");
+        for (FaultProfile profile : profiles) {
+            System.out.println();
+            System.out.println(run(profile, events, eventsPerSecond));
+        }
+    }
+
+    public static Result run(FaultProfile profile, int events, int eventsPerSecond) throws Exception {
+        File dataFolder = Files.createTempDirectory("mcmetrics-loadtest").toFile();
+        Logger logger = Logger.getLogger("MCMetrics-LoadTest-" + profile.name);
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.OFF);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        threads.resetPeakThreadCount();
+
+        Result result = new Result(profile.name);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        AtomicLong peakHeap = new AtomicLong();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 50, TimeUnit.MILLISECONDS);
+
+        try (MockIngestServer server = new MockIngestServer(0)) {
+            server.setProfile(profile);
+            ApiSettings settings = new ApiSettings();
+            settings.baseUrl = server.getBaseUrl();
+            settings.dataFolder = dataFolder;
+            // Every event should reach the server, the rate limits would suppress most of a load test
+            settings.rateLimitsEnabled = false;
+            // Off by default, but the mock server has the batch endpoint
+            settings.batchingEnabled = true;
+            MCMetricsAPI api = new MCMetricsAPI("loadtest", "loadtest", logger, settings);
+
+            LatencyHistogram latency = new LatencyHistogram();
+            AtomicBoolean measuring = new AtomicBoolean(true);
+            AtomicLong failures = new AtomicLong();
+            List<CompletableFuture<Void>> futures = new ArrayList<>(events);
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, eventsPerSecond);
+            long start = System.nanoTime();
+
+            for (int i = 0; i < events; i++) {
+                // Open-loop pacing so a slow API shows up as latency rather than a lower send rate
+                long due = start + i * intervalNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+
+                long sentAt = System.nanoTime();
+                futures.add(send(api, i).whenComplete((ignored, error) -> {
+                    if (!measuring.get()) {
+                        return;
+                    }
+                    latency.record(System.nanoTime() - sentAt);
+                    if (error != null) {
+                        failures.incrementAndGet();
+                    }
+                }));
+            }
+            result.sendMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                        .get(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // Failures are counted per event; a timeout leaves the rest unfinished
+            }
+            result.totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            // Shutdown fails whatever is still pending, which shouldn't count towards the run
+            measuring.set(false);
+
+            result.events = events;
+            result.completed = futures.stream().filter(CompletableFuture::isDone).count();
+            result.failures = failures.get();
+            result.latency = latency;
+            result.delivered = server.getAcceptedEventCount();
+            result.requests = server.getRequestCount();
+            result.rateLimited = server.getRateLimitedCount();
+            result.serverErrors = server.getServerErrorCount();
+            result.resets = server.getResetCount();
+            result.retries = api.getRetriedRequestCount();
+            result.circuitTrips = api.getCircuitTripCount();
+            result.outboxBytes = api.getOutboxSizeBytes();
+            result.peakThreads = threads.getPeakThreadCount();
+
+            api.shutdown();
+        } finally {
+            sampler.shutdownNow();
+            deleteRecursively(dataFolder);
+        }
+        result.peakHeapGrowth = Math.max(0, peakHeap.get() - heapBefore);
+        return result;
+    }
+
+    // Roughly the mix of a busy server: mostly chat and custom events, the odd session and ping
+    private static CompletableFuture<Void> send(MCMetricsAPI api, int sequence) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int kind = random.nextInt(100);
+        if (kind < 50) {
+            ChatMessage message = new ChatMessage();
+            message.player_uuid = UUID.randomUUID();
+            message.player_username = "Player" + random.nextInt(1000);
+            message.message = "hello world " + sequence;
+            return api.insertChatMessage(message);
+        } else if (kind < 85) {
+            CustomEvent event = new CustomEvent();
+            event.player_uuid = UUID.randomUUID();
+            event.event_type = "block_break";
+            event.timestamp = new Date();
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("block", "STONE");
+            metadata.put("sequence", sequence);
+            event.metadata = metadata;
+            return api.insertCustomEvent(event);
+        } else if (kind < 98) {
+            Session session = new Session();
+            session.player_uuid = UUID.randomUUID();
+            session.player_username = "Player" + random.nextInt(1000);
+            session.session_start = new Date(System.currentTimeMillis() - 600000);
+            session.session_end = new Date();
+            session.domain = "play.example.com";
+            session.ip_address = "127.0.0.1";
+            return api.insertSession(session);
+        } else {
+            ServerPing ping = new ServerPing();
+            ping.time = new Date();
+            ping.player_count = random.nextInt(200);
+            ping.java_player_count = ping.player_count;
+            return api.insertServerPing(ping);
+        }
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        List<File> files = new ArrayList<>();
+        Files.walk(file.toPath()).forEach(path -> files.add(path.toFile()));
+        Collections.sort(files, Comparator.comparing(File::getPath).reversed());
+        for (File child : files) {
+            child.delete();
+        }
+    }
+
+    public static class Result {
+        public String profile;
+        public int events;
+        public long completed;
+        public long failures;
+        public long delivered;
+        public long requests;
+        public long rateLimited;
+        public long serverErrors;
+        public long resets;
+        public long retries;
+        public long circuitTrips;
+        public long outboxBytes;
+        public int peakThreads;
+        public long peakHeapGrowth;
+        public long sendMillis;
+        public long totalMillis;
+        public LatencyHistogram latency;
+
+        public Result(String profile) {
+            this.profile = profile;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(1, totalMillis) / 1000.0;
+            return "== " + profile + " ==\n"
+                    + "  completed " + completed + "/" + events + " in " + totalMillis + " ms (sent in " + sendMillis
+                    + " ms), " + String.format("%.0f", completed / seconds) + " events/s\n"
+                    + "  failed " + failures + ", delivered " + delivered + " in " + requests + " requests\n"
+                    + "  latency p50/p95/p99: " + latency.formatPercentiles() + "\n"
+                    + "  injected: 429 x" + rateLimited + ", 503 x" + serverErrors + ", reset x" + resets + "\n"
+                    + "  retries " + retries + ", circuit trips " + circuitTrips + ", outbox " + (outboxBytes / 1024)
+                    + " KB\n"
+                    + "  peak threads " + peakThreads + ", peak heap growth " + (peakHeapGrowth / (1024 * 1024))
+                    + " MB";
+        }
+    }
+}
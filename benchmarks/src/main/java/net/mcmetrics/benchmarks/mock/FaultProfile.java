@@ -0,0 +1,97 @@
+package net.mcmetrics.benchmarks.mock;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * How badly the {@link MockIngestServer} behaves. All faults are off by default.
+ */
+public class FaultProfile {
+    public String name;
+    public long latencyMs;
+    public long latencyJitterMs;
+    // Chance per request of a 429 with a Retry-After header
+    public double rateLimitChance;
+    public int retryAfterSeconds = 1;
+    // 503s for the last errorBurstLengthMs of every errorBurstEveryMs
+    public long errorBurstEveryMs;
+    public long errorBurstLengthMs;
+    // Response bodies are trickled out at this rate, 0 for no limit
+    public int slowBodyBytesPerSecond;
+    // Chance per request of the connection being dropped without a response
+    public double resetChance;
+
+    public FaultProfile(String name) {
+        this.name = name;
+    }
+
+    public static FaultProfile healthy() {
+        FaultProfile profile = new FaultProfile("healthy");
+        profile.latencyMs = 20;
+        profile.latencyJitterMs = 10;
+        return profile;
+    }
+
+    public static FaultProfile slow() {
+        FaultProfile profile = new FaultProfile("slow");
+        profile.latencyMs = 800;
+        profile.latencyJitterMs = 700;
+        return profile;
+    }
+
+    public static FaultProfile rateLimited() {
+        FaultProfile profile = healthy();
+        profile.name = "rate-limited";
+        profile.rateLimitChance = 0.3;
+        profile.retryAfterSeconds = 2;
+        return profile;
+    }
+
+    public static FaultProfile serverErrorBursts() {
+        FaultProfile profile = healthy();
+        profile.name = "5xx-bursts";
+        // Not a divisor of the circuit breaker's 30s open duration, so probes don't always land in a burst
+        profile.errorBurstEveryMs = 9000;
+        profile.errorBurstLengthMs = 3000;
+        return profile;
+    }
+
+    public static FaultProfile slowBodies() {
+        FaultProfile profile = healthy();
+        profile.name = "slow-bodies";
+        profile.slowBodyBytesPerSecond = 64;
+        return profile;
+    }
+
+    public static FaultProfile connectionResets() {
+        FaultProfile profile = healthy();
+        profile.name = "resets";
+        profile.resetChance = 0.2;
+        return profile;
+    }
+
+    public static FaultProfile outage() {
+        FaultProfile profile = new FaultProfile("outage");
+        profile.resetChance = 1;
+        return profile;
+    }
+
+    public static List<FaultProfile> all() {
+        return Arrays.asList(healthy(), slow(), rateLimited(), serverErrorBursts(), slowBodies(), connectionResets(),
+                outage());
+    }
+
+    public static FaultProfile fromString(String name) {
+        for (FaultProfile profile : all()) {
+            if (profile.name.equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown fault profile: " + name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
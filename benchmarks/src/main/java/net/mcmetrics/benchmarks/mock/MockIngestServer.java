@@ -0,0 +1,215 @@
+package net.mcmetrics.benchmarks.mock;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the ingest API on localhost, implementing /insert/* and /ab_tests. Faults from the
+ * current {@link FaultProfile} are applied to every request, so the client can be observed during
+ * an incident without touching the real service.
+ */
+public class MockIngestServer implements AutoCloseable {
+    private static final byte[] OK_BODY = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] AB_TESTS_BODY = "{\"data\":{\"ab_tests\":[]}}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long startTime = System.currentTimeMillis();
+    private volatile FaultProfile profile = new FaultProfile("none");
+    private volatile boolean bulkEndpoints = true;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong acceptedEventCount = new AtomicLong();
+    private final AtomicLong rateLimitedCount = new AtomicLong();
+    private final AtomicLong serverErrorCount = new AtomicLong();
+    private final AtomicLong resetCount = new AtomicLong();
+    private final Map<String, AtomicLong> eventsByType = new ConcurrentHashMap<>();
+
+    public MockIngestServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "MockIngest-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/v1/", this::handle);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    public void setProfile(FaultProfile profile) {
+        this.profile = profile;
+    }
+
+    // Without them /insert/batch and /insert/sessions answer 404, like an API that predates them
+    public void setBulkEndpoints(boolean bulkEndpoints) {
+        this.bulkEndpoints = bulkEndpoints;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    // Events the server accepted, counting each event inside batches
+    public long getAcceptedEventCount() {
+        return acceptedEventCount.get();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimitedCount.get();
+    }
+
+    public long getServerErrorCount() {
+        return serverErrorCount.get();
+    }
+
+    public long getResetCount() {
+        return resetCount.get();
+    }
+
+    public Map<String, AtomicLong> getEventsByType() {
+        return eventsByType;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        FaultProfile faults = profile;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        byte[] requestBody = readFully(exchange.getRequestBody());
+
+        if (random.nextDouble() < faults.resetChance) {
+            resetCount.incrementAndGet();
+            // HttpServer drops the connection when a handler throws
+            throw new IllegalStateException("Injected connection reset");
+        }
+
+        long latency = faults.latencyMs + (faults.latencyJitterMs > 0 ? random.nextLong(faults.latencyJitterMs) : 0);
+        if (latency > 0) {
+            sleep(latency);
+        }
+
+        if (exchange.getRequestHeaders().getFirst("X-Server-ID") == null
+                || exchange.getRequestHeaders().getFirst("X-Server-Key") == null) {
+            respond(exchange, 401, "{\"error\":\"AUTH_MISSING_CREDENTIALS\"}", faults);
+            return;
+        }
+
+        if (faults.errorBurstEveryMs > 0
+                && (System.currentTimeMillis() - startTime) % faults.errorBurstEveryMs
+                        >= faults.errorBurstEveryMs - faults.errorBurstLengthMs) {
+            serverErrorCount.incrementAndGet();
+            respond(exchange, 503, "{\"error\":\"SERVICE_UNAVAILABLE\"}", faults);
+            return;
+        }
+
+        if (random.nextDouble() < faults.rateLimitChance) {
+            rateLimitedCount.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", String.valueOf(faults.retryAfterSeconds));
+            respond(exchange, 429, "{\"error\":\"RATE_LIMIT_EXCEEDED\"}", faults);
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath().substring("/v1".length());
+        if (path.equals("/ab_tests") && exchange.getRequestMethod().equals("GET")) {
+            respond(exchange, 200, AB_TESTS_BODY, faults);
+        } else if (!bulkEndpoints && (path.equals("/insert/batch") || path.equals("/insert/sessions"))) {
+            respond(exchange, 404, "{\"error\":\"NOT_FOUND\"}", faults);
+        } else if (path.startsWith("/insert/") && exchange.getRequestMethod().equals("POST")) {
+            try {
+                countEvents(path.substring("/insert/".length()), requestBody);
+            } catch (RuntimeException e) {
+                respond(exchange, 400, "{\"error\":\"INVALID_BODY\"}", faults);
+                return;
+            }
+            respond(exchange, 200, OK_BODY, faults);
+        } else {
+            respond(exchange, 404, "{\"error\":\"NOT_FOUND\"}", faults);
+        }
+    }
+
+    private void countEvents(String type, byte[] body) {
+        JsonObject json = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        if (type.equals("batch")) {
+            for (JsonElement event : json.getAsJsonArray("events")) {
+                countEvent(event.getAsJsonObject().get("type").getAsString(), 1);
+            }
+        } else if (type.equals("sessions")) {
+            countEvent("session", json.getAsJsonArray("sessions").size());
+        } else {
+            countEvent(type, 1);
+        }
+    }
+
+    private void countEvent(String type, int count) {
+        acceptedEventCount.addAndGet(count);
+        eventsByType.computeIfAbsent(type, key -> new AtomicLong()).addAndGet(count);
+    }
+
+    private void respond(HttpExchange exchange, int status, String body, FaultProfile faults) throws IOException {
+        respond(exchange, status, body.getBytes(StandardCharsets.UTF_8), faults);
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body, FaultProfile faults) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (faults.slowBodyBytesPerSecond <= 0) {
+                out.write(body);
+                return;
+            }
+            // Trickle the body out in small pieces
+            int piece = Math.max(1, faults.slowBodyBytesPerSecond / 10);
+            for (int offset = 0; offset < body.length; offset += piece) {
+                out.write(body, offset, Math.min(piece, body.length - offset));
+                out.flush();
+                sleep(100);
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
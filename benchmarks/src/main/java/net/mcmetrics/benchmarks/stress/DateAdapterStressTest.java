@@ -0,0 +1,79 @@
+package net.mcmetrics.benchmarks.stress;
+
+import com.google.gson.stream.JsonWriter;
+import net.mcmetrics.shared.json.UtcDateAdapter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Formats dates from many threads through one shared UtcDateAdapter, as the API's worker threads do,
+ * and checks every result against a SimpleDateFormat owned by the checking thread. Timestamps are
+ * drawn around a few seconds and days so threads keep replacing each other's cached second and day.
+ *
+ * Usage: DateAdapterStressTest [threads] [dates per thread]
+ */
+public class DateAdapterStressTest {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int datesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+        UtcDateAdapter adapter = new UtcDateAdapter();
+        long base = System.currentTimeMillis();
+        AtomicLong mismatches = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+                reference.setTimeZone(TimeZone.getTimeZone("UTC"));
+                StringWriter buffer = new StringWriter();
+                JsonWriter writer = new JsonWriter(buffer);
+                writer.setLenient(true);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                try {
+                    start.await();
+                    for (int i = 0; i < datesPerThread; i++) {
+                        long time = base + random.nextInt(3) * 86400000L + random.nextInt(4) * 1000L
+                                + random.nextInt(1000);
+                        Date date = new Date(time);
+
+                        buffer.getBuffer().setLength(0);
+                        adapter.write(writer, date);
+                        String expected = "\"" + reference.format(date) + "\"";
+                        if (!expected.contentEquals(buffer.getBuffer())) {
+                            if (mismatches.incrementAndGet() <= 10) {
+                                System.out.println("Mismatch: expected " + expected + ", got " + buffer);
+                            }
+                        }
+                    }
+                } catch (InterruptedException | IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }, "DateStress-" + t);
+            workers[t].start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedMs = (System.nanoTime() - startTime) / 1000000;
+
+        System.out.println(threads + " threads formatted " + ((long) threads * datesPerThread) + " dates in "
+                + elapsedMs + " ms, " + mismatches.get() + " mismatches");
+        if (mismatches.get() > 0) {
+            System.exit(1);
+        }
+    }
+}
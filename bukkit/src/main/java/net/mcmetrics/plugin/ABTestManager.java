@@ -1,11 +1,12 @@
 package net.mcmetrics.plugin;
 
+import com.tcoded.folialib.enums.EntityTaskResult;
 import net.mcmetrics.shared.MCMetricsAPI;
 import net.mcmetrics.shared.models.ABTest;
 import net.mcmetrics.shared.models.ABTest.TriggerType;
 import net.mcmetrics.shared.models.ABTest.ABTestVariant;
 import net.mcmetrics.shared.models.ABTestExposure;
-import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.session.SessionState;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
@@ -17,19 +18,19 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 public class ABTestManager {
-    private final MCMetricsAPI api;
     private final Logger logger;
     private final MCMetricsSpigotPlugin plugin;
     private List<ABTest> activeTests;
 
-    public ABTestManager(MCMetricsSpigotPlugin plugin, MCMetricsAPI api, Logger logger) {
+    public ABTestManager(MCMetricsSpigotPlugin plugin, Logger logger) {
         this.plugin = plugin;
-        this.api = api;
         this.logger = logger;
         this.activeTests = new ArrayList<>();
     }
 
     public void fetchTests() {
+        // Looked up each time, the API instance is replaced when the config is reloaded
+        MCMetricsAPI api = plugin.getApi();
         if (api == null) {
             logger.warning("Cannot fetch A/B tests: MCMetrics API is not initialized");
             return;
@@ -83,7 +84,8 @@ public class ABTestManager {
         return variant;
     }
 
-    private ABTestVariant selectVariant(ABTest test, UUID playerUuid) {
+    // Deterministic, a player always lands in the same variant of a test
+    public ABTestVariant selectVariant(ABTest test, UUID playerUuid) {
         // Create a deterministic hash from the test ID and player UUID
         String seed = test.id.toString() + playerUuid.toString();
         int hash;
@@ -122,18 +124,13 @@ public class ABTestManager {
     }
 
     private void executeVariant(ABTest test, ABTestVariant variant, Player player) {
-        // Record the exposure in the session
-        Session session = plugin.getSessionManager().getSession(player.getUniqueId());
-        if (session != null) {
+        // Record the exposure in the session, may run on any thread
+        SessionState sessionState = plugin.getSessionManager().getState(player.getUniqueId());
+        if (sessionState != null) {
             ABTestExposure exposure = new ABTestExposure();
             exposure.ab_test_id = test.id.toString();
             exposure.variant_name = variant.name;
-
-            // Initialize list if null
-            if (session.ab_test_exposures == null) {
-                session.ab_test_exposures = new ArrayList<>();
-            }
-            session.ab_test_exposures.add(exposure);
+            sessionState.addExposure(exposure);
         } else {
             if (plugin.isDebug()) {
                 logger.warning("Failed to record A/B test exposure: session not found for player " + player.getName());
@@ -152,18 +149,32 @@ public class ABTestManager {
                 .replace("${variant}", variant.name)
                 .replace("${experimentName}", test.name);
 
+        // Through FoliaLib, so on Folia console commands run on the global region and anything
+        // touching the player on the region that owns them, rather than all on one thread
         switch (variant.action) {
             case ConsoleCommand:
-                Bukkit.getScheduler().runTask(plugin, () -> Bukkit.dispatchCommand(Bukkit.getConsoleSender(), payload));
+                plugin.getFoliaLib().getScheduler()
+                        .runNextTick(task -> Bukkit.dispatchCommand(Bukkit.getConsoleSender(), payload));
                 break;
 
             case PlayerCommand:
-                Bukkit.getScheduler().runTask(plugin, () -> player.performCommand(payload));
+                runAtPlayer(player, test, () -> player.performCommand(payload));
                 break;
 
             case PlayerMessage:
-                player.sendMessage(payload);
+                runAtPlayer(player, test, () -> player.sendMessage(payload));
                 break;
         }
     }
+
+    private void runAtPlayer(Player player, ABTest test, Runnable action) {
+        plugin.getFoliaLib().getScheduler()
+                .runAtEntity(player, task -> action.run())
+                .thenAccept(result -> {
+                    if (result != EntityTaskResult.SUCCESS && plugin.isDebug()) {
+                        logger.info("Skipped A/B test " + test.name + " for " + player.getName()
+                                + ", they left before it ran");
+                    }
+                });
+    }
 }
\ No newline at end of file
@@ -3,10 +3,12 @@ package net.mcmetrics.plugin;
 import com.tcoded.folialib.FoliaLib;
 import net.mcmetrics.plugin.commands.MCMetricsCommand;
 import net.mcmetrics.plugin.listeners.*;
+import net.mcmetrics.shared.ApiSettings;
 import net.mcmetrics.shared.MCMetricsAPI;
 import net.mcmetrics.shared.config.ConfigManager;
 import net.mcmetrics.shared.models.ServerPing;
 import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.session.SessionManager;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
@@ -18,12 +20,16 @@ import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 public class MCMetricsSpigotPlugin extends JavaPlugin {
+    private static final long SHUTDOWN_TIMEOUT_MS = 30000;
+
     private MCMetricsAPI api;
     private SessionManager sessionManager;
     private ConfigManager configManager;
     private LegacyPlayerManager legacyPlayerManager;
     private ABTestManager abTestManager;
     private ConsoleEventListener consoleEventListener;
+    private BukkitEventListener bukkitEventListener;
+    private final PlayerIndex playerIndex = new PlayerIndex();
     private FoliaLib foliaLib;
 
     @Override
@@ -43,27 +49,32 @@ public class MCMetricsSpigotPlugin extends JavaPlugin {
 
         legacyPlayerManager = new LegacyPlayerManager(getDataFolder(), getLogger());
 
+        sessionManager = new SessionManager();
         initializeAPI();
-        sessionManager = new SessionManager(api);
-        abTestManager = new ABTestManager(this, api, getLogger());
+        abTestManager = new ABTestManager(this, getLogger());
+
+        // Players already online after a reload never fire a join event
+        for (Player player : getServer().getOnlinePlayers()) {
+            playerIndex.playerJoined(player.getUniqueId(), player.getName());
+        }
 
         // event listeners
+        getServer().getPluginManager().registerEvents(new PlayerIndexListener(playerIndex), this);
         getServer().getPluginManager().registerEvents(new PlayerSessionListener(this, sessionManager), this);
         getServer().getPluginManager().registerEvents(new ABTestListener(this), this);
         getServer().getPluginManager().registerEvents(new ChatMessageListener(this), this);
 
-        // Only setup console event listener on non-Folia servers and if not disabled in
-        // config
-        if (!foliaLib.isFolia() && !configManager.getBoolean("main", "disable-console-listener")) {
+        bukkitEventListener = new BukkitEventListener(this);
+        bukkitEventListener.loadEvents();
+
+        // Setup console event listener unless disabled in config. It matches lines on its own
+        // thread and never touches the world, so it works the same on Folia
+        if (!configManager.getBoolean("main", "disable-console-listener")) {
             consoleEventListener = new ConsoleEventListener(this);
             getServer().getPluginManager().registerEvents(consoleEventListener, this);
             getLogger().info("Initialized console event listener");
         } else {
-            if (foliaLib.isFolia()) {
-                getLogger().info("Console event listener disabled on Folia server");
-            } else {
-                getLogger().info("Console event listener disabled by configuration");
-            }
+            getLogger().info("Console event listener disabled by configuration");
         }
 
         // commands
@@ -94,7 +105,15 @@ public class MCMetricsSpigotPlugin extends JavaPlugin {
             return;
         }
 
-        api = new MCMetricsAPI(serverId, serverKey, getLogger());
+        // The new instance takes over the old one's outbox, so the old one can send what it has left
+        // in the background instead of holding up the reload
+        MCMetricsAPI previous = api;
+        api = new MCMetricsAPI(serverId, serverKey, getLogger(),
+                ApiSettings.fromConfig(configManager, "main", getDataFolder(), getLogger()), previous);
+        api.setSessionManager(sessionManager);
+        if (previous != null) {
+            previous.shutdownInBackground();
+        }
     }
 
     @Override
@@ -104,6 +123,9 @@ public class MCMetricsSpigotPlugin extends JavaPlugin {
             foliaLib.getScheduler().cancelAllTasks();
         }
 
+        // Sessions and the final flush share one deadline, so stopping never waits on the API for long
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+
         if (sessionManager != null) {
             List<Session> remainingSessions = sessionManager.endAllSessions();
             if (!remainingSessions.isEmpty()) {
@@ -115,11 +137,11 @@ public class MCMetricsSpigotPlugin extends JavaPlugin {
                     session.session_end = endTime;
                 }
 
-                // Upload sessions asynchronously in batches
+                // Upload sessions in bulk; whatever misses the deadline is sent on the next startup
                 if (api != null) {
                     try {
-                        api.insertSessionsBatch(remainingSessions, 5, 20) // 5 sessions per batch, 20 second timeout
-                                .get(25, TimeUnit.SECONDS); // Wait up to 25 seconds for all uploads to complete
+                        api.insertSessionsBatch(remainingSessions, 50, 20) // 50 sessions per request, 20 second deadline
+                                .get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
                         getLogger().info("Successfully uploaded all remaining sessions during shutdown");
                     } catch (Exception e) {
                         getLogger().warning("Failed to upload some sessions during shutdown: " + e.getMessage());
@@ -128,13 +150,17 @@ public class MCMetricsSpigotPlugin extends JavaPlugin {
             }
         }
 
+        if (bukkitEventListener != null) {
+            bukkitEventListener.shutdown();
+        }
+
         if (consoleEventListener != null) {
             consoleEventListener.shutdown();
             getLogger().info("Console event listener shut down");
         }
 
         if (api != null) {
-            api.shutdown();
+            api.shutdown(Math.max(0, deadline - System.currentTimeMillis()));
         }
         getLogger().info("MCMetrics plugin disabled.");
     }
@@ -197,6 +223,14 @@ public class MCMetricsSpigotPlugin extends JavaPlugin {
         return consoleEventListener;
     }
 
+    public BukkitEventListener getBukkitEventListener() {
+        return bukkitEventListener;
+    }
+
+    public PlayerIndex getPlayerIndex() {
+        return playerIndex;
+    }
+
     public FoliaLib getFoliaLib() {
         return foliaLib;
     }
@@ -206,6 +240,7 @@ public class MCMetricsSpigotPlugin extends JavaPlugin {
             configManager.reloadConfig("main");
             initializeAPI();
             fetchABTests();
+            bukkitEventListener.loadEvents();
             if (consoleEventListener != null) {
                 consoleEventListener.loadEventPatterns();
             }
@@ -0,0 +1,150 @@
+package net.mcmetrics.plugin;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Case-insensitive player name to UUID lookups that are safe from any thread, unlike Bukkit's
+ * player lookups. Online players are kept up to date from join and quit events; players who left
+ * recently stay resolvable by name until enough others have left after them.
+ */
+public class PlayerIndex {
+    private static final int RECENT_OFFLINE_CAPACITY = 1000;
+
+    private final Map<String, UUID> onlineByName = new ConcurrentHashMap<>();
+    private final Map<UUID, String> onlineNames = new ConcurrentHashMap<>();
+    // Least recently seen first; guarded by itself
+    private final Map<String, UUID> recentOffline = new LinkedHashMap<String, UUID>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UUID> eldest) {
+            return size() > RECENT_OFFLINE_CAPACITY;
+        }
+    };
+
+    public void playerJoined(UUID playerId, String name) {
+        String key = key(name);
+        String previousName = onlineNames.put(playerId, name);
+        if (previousName != null && !key(previousName).equals(key)) {
+            onlineByName.remove(key(previousName), playerId);
+        }
+        onlineByName.put(key, playerId);
+        synchronized (recentOffline) {
+            recentOffline.remove(key);
+        }
+    }
+
+    public void playerQuit(UUID playerId, String name) {
+        String key = key(name);
+        onlineNames.remove(playerId);
+        onlineByName.remove(key, playerId);
+        synchronized (recentOffline) {
+            recentOffline.put(key, playerId);
+        }
+    }
+
+    /**
+     * Resolves a UUID, or the name of an online or recently seen player.
+     *
+     * @return the player's UUID, or null if the name isn't known
+     */
+    public UUID resolve(String nameOrUuid) {
+        UUID uuid = parseUuid(nameOrUuid);
+        return uuid != null ? uuid : getUuid(nameOrUuid);
+    }
+
+    // UUID of an online or recently seen player with this name, any case; null if unknown
+    public UUID getUuid(String name) {
+        String key = key(name);
+        UUID uuid = onlineByName.get(key);
+        if (uuid != null) {
+            return uuid;
+        }
+        synchronized (recentOffline) {
+            return recentOffline.get(key);
+        }
+    }
+
+    // UUID of the online player with this name, any case; null if nobody by that name is online
+    public UUID getOnlineUuid(String name) {
+        return onlineByName.get(key(name));
+    }
+
+    // Name of the online player, null if they aren't online
+    public String getOnlineName(UUID playerId) {
+        return onlineNames.get(playerId);
+    }
+
+    public int getOnlineCount() {
+        return onlineNames.size();
+    }
+
+    public void clear() {
+        onlineByName.clear();
+        onlineNames.clear();
+        synchronized (recentOffline) {
+            recentOffline.clear();
+        }
+    }
+
+    /**
+     * Parses a UUID with or without dashes, without throwing for text that isn't one.
+     *
+     * @return the UUID, or null if the text isn't a UUID
+     */
+    public static UUID parseUuid(String text) {
+        if (text == null) {
+            return null;
+        }
+        int length = text.length();
+        boolean dashed = length == 36;
+        if (!dashed && length != 32) {
+            return null;
+        }
+        if (dashed && (text.charAt(8) != '-' || text.charAt(13) != '-' || text.charAt(18) != '-'
+                || text.charAt(23) != '-')) {
+            return null;
+        }
+
+        long most = 0;
+        long least = 0;
+        int digits = 0;
+        for (int i = 0; i < length; i++) {
+            if (dashed && (i == 8 || i == 13 || i == 18 || i == 23)) {
+                continue;
+            }
+            int digit = hexValue(text.charAt(i));
+            if (digit < 0) {
+                return null;
+            }
+            if (digits < 16) {
+                most = (most << 4) | digit;
+            } else {
+                least = (least << 4) | digit;
+            }
+            digits++;
+        }
+        return new UUID(most, least);
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,13 +1,16 @@
 package net.mcmetrics.plugin.commands;
 
 import net.mcmetrics.plugin.MCMetricsSpigotPlugin;
-import net.mcmetrics.plugin.SessionManager;
+import net.mcmetrics.plugin.PlayerIndex;
+import net.mcmetrics.plugin.listeners.BukkitEventListener;
 import net.mcmetrics.plugin.listeners.ConsoleEventListener;
 import net.mcmetrics.shared.MCMetricsAPI;
+import net.mcmetrics.shared.metrics.EndpointLatency;
 import net.mcmetrics.shared.models.ABTest;
 import net.mcmetrics.shared.models.CustomEvent;
 import net.mcmetrics.shared.models.Payment;
 import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.pipeline.TrafficClass;
 import net.md_5.bungee.api.ChatColor;
 import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
@@ -19,11 +22,14 @@ import org.bukkit.entity.Player;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.HashMap;
 
 import net.mcmetrics.plugin.listeners.ConsoleEventListener.EventPatternInfo;
+import net.mcmetrics.plugin.listeners.ConsoleEventMatcher.PatternStats;
+import net.mcmetrics.shared.session.SessionManager;
 
 public class MCMetricsCommand implements CommandExecutor {
 
@@ -90,24 +96,15 @@ public class MCMetricsCommand implements CommandExecutor {
             return true;
         }
 
-        UUID playerUuid;
-        String playerName;
-
         // Parse player argument
-        try {
-            playerUuid = UUID.fromString(args[2]);
-            Player player = Bukkit.getPlayer(playerUuid);
-            playerName = player != null ? player.getName() : args[2];
-        } catch (IllegalArgumentException e) {
-            Player player = Bukkit.getPlayer(args[2]);
-            if (player == null) {
-                sender.sendMessage(
-                        colorize("&cPlayer not found. Note that for offline players, you must use their UUID."));
-                return true;
-            }
-            playerUuid = player.getUniqueId();
-            playerName = player.getName();
+        UUID playerUuid = plugin.getPlayerIndex().resolve(args[2]);
+        if (playerUuid == null) {
+            sender.sendMessage(
+                    colorize("&cPlayer not found. Note that for offline players, you must use their UUID."));
+            return true;
         }
+        String onlineName = plugin.getPlayerIndex().getOnlineName(playerUuid);
+        String playerName = onlineName != null ? onlineName : args[2];
 
         double amount;
         try {
@@ -132,10 +129,16 @@ public class MCMetricsCommand implements CommandExecutor {
                 .thenRun(() -> {
                     sender.sendMessage(
                             colorize(PRIMARY_COLOR + "Payment recorded successfully for " + finalPlayerName + "."));
-                    Player player = Bukkit.getPlayer(finalPlayerId);
-                    if (player != null && player.isOnline()) {
-                        plugin.getABTestManager().handlePurchaseTrigger(player);
+                    // Runs on the HTTP thread; the index is safe to ask here, Bukkit only on the next tick
+                    if (plugin.getPlayerIndex().getOnlineName(finalPlayerId) == null) {
+                        return;
                     }
+                    plugin.getFoliaLib().getScheduler().runNextTick(task -> {
+                        Player player = Bukkit.getPlayer(finalPlayerId);
+                        if (player != null && player.isOnline()) {
+                            plugin.getABTestManager().handlePurchaseTrigger(player);
+                        }
+                    });
                 })
                 .exceptionally(e -> {
                     if (plugin.getConfigManager().getBoolean("main", "debug")) {
@@ -161,17 +164,11 @@ public class MCMetricsCommand implements CommandExecutor {
             return true;
         }
 
-        UUID playerUuid;
-        try {
-            playerUuid = UUID.fromString(args[1]);
-        } catch (IllegalArgumentException e) {
-            Player player = Bukkit.getPlayer(args[1]);
-            if (player == null) {
-                sender.sendMessage(
-                        colorize("&cPlayer not found. Note that for offline players, you must use their UUID."));
-                return true;
-            }
-            playerUuid = player.getUniqueId();
+        UUID playerUuid = plugin.getPlayerIndex().resolve(args[1]);
+        if (playerUuid == null) {
+            sender.sendMessage(
+                    colorize("&cPlayer not found. Note that for offline players, you must use their UUID."));
+            return true;
         }
 
         CustomEvent event = new CustomEvent();
@@ -219,18 +216,46 @@ public class MCMetricsCommand implements CommandExecutor {
 
         sender.sendMessage(colorize(PRIMARY_COLOR + "&l📊 Active Custom Event Listeners"));
 
+        List<BukkitEventListener.EventSource> bukkitEvents = plugin.getBukkitEventListener().getSources();
         ConsoleEventListener consoleEventListener = plugin.getConsoleEventListener();
-        if (consoleEventListener == null || consoleEventListener.getEventPatternsInfo().isEmpty()) {
+        boolean hasConsolePatterns = consoleEventListener != null
+                && !consoleEventListener.getEventPatternsInfo().isEmpty();
+        if (bukkitEvents.isEmpty() && !hasConsolePatterns) {
             sender.sendMessage(colorize("&7No custom event listeners configured."));
             return true;
         }
 
+        if (!bukkitEvents.isEmpty()) {
+            sender.sendMessage(colorize("&7Bukkit events:"));
+            for (BukkitEventListener.EventSource source : bukkitEvents) {
+                sender.sendMessage(colorize("&8&m                                                "));
+                sender.sendMessage(colorize(PRIMARY_COLOR + "Name: &f" + source.getEventName()));
+                sender.sendMessage(colorize(PRIMARY_COLOR + "Event: &7" + source.getEventClassName()));
+                sender.sendMessage(colorize(PRIMARY_COLOR + "Recorded: &7" + source.getRecordedCount()));
+            }
+        }
+        if (!hasConsolePatterns) {
+            return true;
+        }
+
         sender.sendMessage(colorize("&7Console message patterns:"));
         for (EventPatternInfo pattern : consoleEventListener.getEventPatternsInfo()) {
             sender.sendMessage(colorize("&8&m                                                "));
             sender.sendMessage(colorize(PRIMARY_COLOR + "Name: &f" + pattern.getName()));
             sender.sendMessage(colorize(PRIMARY_COLOR + "Pattern: &7" + pattern.getPattern()));
             sender.sendMessage(colorize(PRIMARY_COLOR + "Player field: &7" + pattern.getPlayerField()));
+
+            PatternStats stats = pattern.getStats();
+            long evaluations = stats.getEvaluations();
+            long averageMicros = evaluations == 0 ? 0 : stats.getTotalNanos() / evaluations / 1000;
+            sender.sendMessage(colorize(PRIMARY_COLOR + "Checked: &7" + evaluations + " lines, "
+                    + stats.getMatches() + " matched"));
+            sender.sendMessage(colorize(PRIMARY_COLOR + "Time: &7" + (stats.getTotalNanos() / 1000000) + " ms total, "
+                    + averageMicros + " \u00B5s avg, " + (stats.getMaxNanos() / 1000) + " \u00B5s max"));
+            if (stats.isDisabled()) {
+                sender.sendMessage(colorize("&cDisabled: backtracked too much on a console line. "
+                        + "Fix the pattern and reload."));
+            }
         }
 
         return true;
@@ -275,6 +300,50 @@ public class MCMetricsCommand implements CommandExecutor {
         sender.sendMessage(colorize("&7Active sessions: &f" + plugin.getActiveSessionCount()));
         sender.sendMessage(colorize("&7API requests in the last hour: &f" + api.getRequestCount()));
         sender.sendMessage(colorize("&7API errors in the last hour: &f" + api.getErrorCount()));
+        sender.sendMessage(colorize("&7Circuit breaker: &f" + api.getCircuitState() + " &7(tripped &f"
+                + api.getCircuitTripCount() + "&7 times, held requests: &f" + api.getHeldRequestCount() + "&7)"));
+        sender.sendMessage(colorize("&7Connections reused/opened: &f" + api.getConnectionPoolHits() + "/"
+                + api.getConnectionPoolMisses()));
+        sender.sendMessage(colorize("&7Events waiting to be batched: &f" + api.getPendingEventCount()));
+        sender.sendMessage(colorize("&7Chat messages buffered: &f" + api.getBufferedChatMessageCount() + "/"
+                + api.getChatBufferCapacity() + " &7(dropped: &f" + api.getDroppedChatMessageCount() + "&7)"));
+        sender.sendMessage(colorize("&7Events over the rate limits: &f" + api.getSuppressedEventCount()));
+        sender.sendMessage(colorize("&7Aggregated events sent one by one (too many keys): &f"
+                + api.getRollupOverflowCount()));
+        sender.sendMessage(colorize("&7Request queue: &f" + api.getQueuedRequestCount() + "/"
+                + api.getRequestQueueCapacity() + " &7(active workers: &f" + api.getActiveWorkerCount() + "&7)"));
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            sender.sendMessage(colorize("&7  " + trafficClass + ": &f" + api.getQueuedRequestCount(trafficClass) + "/"
+                    + api.getRequestQueueCapacity(trafficClass) + " &7queued, &f"
+                    + api.getActiveWorkerCount(trafficClass) + "/" + api.getMaxWorkerCount(trafficClass)
+                    + " &7workers, &f" + api.getRejectedRequestCount(trafficClass) + " &7dropped"));
+        }
+        sender.sendMessage(colorize("&7Retried requests: &f" + api.getRetriedRequestCount()
+                + " &7(waiting to retry: &f" + api.getWaitingRetryCount() + "&7)"));
+        sender.sendMessage(colorize("&7Dropped requests: &f" + api.getRejectedRequestCount()
+                + " &7(kept in outbox: &f" + api.getSpilledRequestCount() + "&7)"));
+        sender.sendMessage(colorize("&7Outbox: &f" + api.getOutboxSizeBytes() / 1024
+                + " KB &7on disk (re-sent: &f" + api.getReplayedEventCount() + "&7, not saved: &f"
+                + api.getUnsavedEventCount() + "&7)"));
+
+        ConsoleEventListener consoleEventListener = plugin.getConsoleEventListener();
+        if (consoleEventListener != null) {
+            sender.sendMessage(colorize("&7Console lines checked: &f" + consoleEventListener.getProcessedLineCount()
+                    + " &7(matched: &f" + consoleEventListener.getMatchedLineCount() + "&7, filtered: &f"
+                    + consoleEventListener.getFilteredLineCount() + "&7, skipped: &f"
+                    + consoleEventListener.getDroppedLineCount() + "&7, queued: &f"
+                    + consoleEventListener.getQueuedLineCount() + "/" + consoleEventListener.getQueueCapacity()
+                    + "&7)"));
+        }
+
+        Map<String, EndpointLatency> latencies = api.getEndpointLatencies();
+        sender.sendMessage(colorize("&7Latency p50/p95/p99:" + (latencies.isEmpty() ? " &fno requests yet" : "")));
+        for (Map.Entry<String, EndpointLatency> entry : latencies.entrySet()) {
+            EndpointLatency latency = entry.getValue();
+            sender.sendMessage(colorize("&7  " + entry.getKey() + ": &f" + latency.getTotal().formatPercentiles()
+                    + " &7(first byte &f" + latency.getTimeToFirstByte().formatPercentiles() + "&7, connect &f"
+                    + latency.getConnect().formatPercentiles() + "&7)"));
+        }
 
         return true;
     }
@@ -343,14 +412,7 @@ public class MCMetricsCommand implements CommandExecutor {
         }
 
         // Find the player
-        Player player = Bukkit.getPlayer(playerName);
-        if (player == null) {
-            try {
-                UUID uuid = UUID.fromString(playerName);
-                player = Bukkit.getPlayer(uuid);
-            } catch (IllegalArgumentException ignored) {
-            }
-        }
+        Player player = getOnlinePlayer(playerName);
 
         if (player == null) {
             sender.sendMessage(colorize("&cPlayer '" + playerName + "' not found or not online."));
@@ -373,14 +435,7 @@ public class MCMetricsCommand implements CommandExecutor {
             return true;
         }
 
-        Player target = Bukkit.getPlayer(args[1]);
-        if (target == null) {
-            try {
-                UUID uuid = UUID.fromString(args[1]);
-                target = Bukkit.getPlayer(uuid);
-            } catch (IllegalArgumentException ignored) {
-            }
-        }
+        Player target = getOnlinePlayer(args[1]);
 
         if (target == null) {
             sender.sendMessage(colorize("&cPlayer not found or not online."));
@@ -405,9 +460,9 @@ public class MCMetricsCommand implements CommandExecutor {
         sender.sendMessage(colorize("&7AFK time: &f" + plugin.getAFKTime(playerUUID) + " seconds"));
         sender.sendMessage(colorize("&7IP Address: &f" + session.ip_address));
 
-        Map<String, Integer> groupedEvents = sessionManager.getGroupedCustomEvents(playerUUID);
+        Map<String, Long> groupedEvents = sessionManager.getGroupedCustomEvents(playerUUID);
         sender.sendMessage(colorize("&7Custom events this session:"));
-        for (Map.Entry<String, Integer> entry : groupedEvents.entrySet()) {
+        for (Map.Entry<String, Long> entry : groupedEvents.entrySet()) {
             sender.sendMessage(colorize("  &f" + entry.getKey() + ": &7" + entry.getValue() + " times"));
         }
 
@@ -426,14 +481,7 @@ public class MCMetricsCommand implements CommandExecutor {
             return true;
         }
 
-        Player target = Bukkit.getPlayer(args[1]);
-        if (target == null) {
-            try {
-                UUID uuid = UUID.fromString(args[1]);
-                target = Bukkit.getPlayer(uuid);
-            } catch (IllegalArgumentException ignored) {
-            }
-        }
+        Player target = getOnlinePlayer(args[1]);
 
         if (target == null) {
             sender.sendMessage(colorize("&cPlayer not found or not online."));
@@ -478,6 +526,15 @@ public class MCMetricsCommand implements CommandExecutor {
         sender.sendMessage(colorize("  &7- Record a custom event"));
     }
 
+    // Online player by exact name (any case) or UUID, null if they aren't online
+    private Player getOnlinePlayer(String nameOrUuid) {
+        UUID playerUuid = PlayerIndex.parseUuid(nameOrUuid);
+        if (playerUuid == null) {
+            playerUuid = plugin.getPlayerIndex().getOnlineUuid(nameOrUuid);
+        }
+        return playerUuid != null ? Bukkit.getPlayer(playerUuid) : null;
+    }
+
     private String colorize(String message) {
         return ChatColor.translateAlternateColorCodes('&',
                 message.replace(PRIMARY_COLOR, ChatColor.of(PRIMARY_COLOR).toString()));
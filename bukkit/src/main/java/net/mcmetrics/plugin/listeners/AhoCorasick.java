@@ -0,0 +1,160 @@
+package net.mcmetrics.plugin.listeners;
+
+import java.util.*;
+
+/**
+ * Finds which of a set of literals occur in a line, in a single pass over its characters and
+ * without allocating. The automaton is compiled into a dense transition table over the characters
+ * that appear in the literals, so every step is two array lookups.
+ */
+final class AhoCorasick {
+    private final int[] asciiClass = new int[128];
+    private final char[] otherChars; // sorted, non-ASCII characters of the literals
+    private final int[] otherClasses;
+    private final int classCount;
+    private final int[] transitions; // state * classCount + class -> state
+    private final long[][] outputs; // per state, the literals ending there as a bit set, null if none
+    private final int words;
+
+    /**
+     * @param literals indexed by the number reported back in {@link #find}; null entries are skipped
+     */
+    AhoCorasick(List<String> literals) {
+        this.words = Math.max(1, (literals.size() + 63) / 64);
+
+        // Character classes: 0 for characters in no literal, then one per distinct character
+        Arrays.fill(asciiClass, 0);
+        TreeMap<Character, Integer> nonAscii = new TreeMap<>();
+        int classes = 1;
+        for (String literal : literals) {
+            if (literal == null) {
+                continue;
+            }
+            for (int i = 0; i < literal.length(); i++) {
+                char c = literal.charAt(i);
+                if (c < 128) {
+                    if (asciiClass[c] == 0) {
+                        asciiClass[c] = classes++;
+                    }
+                } else if (!nonAscii.containsKey(c)) {
+                    nonAscii.put(c, classes++);
+                }
+            }
+        }
+        this.classCount = classes;
+        this.otherChars = new char[nonAscii.size()];
+        this.otherClasses = new int[nonAscii.size()];
+        int index = 0;
+        for (Map.Entry<Character, Integer> entry : nonAscii.entrySet()) {
+            otherChars[index] = entry.getKey();
+            otherClasses[index] = entry.getValue();
+            index++;
+        }
+
+        // Trie
+        List<int[]> trie = new ArrayList<>();
+        List<long[]> output = new ArrayList<>();
+        trie.add(new int[classCount]);
+        output.add(null);
+        for (int literalIndex = 0; literalIndex < literals.size(); literalIndex++) {
+            String literal = literals.get(literalIndex);
+            if (literal == null || literal.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                int charClass = classOf(literal.charAt(i));
+                int next = trie.get(state)[charClass];
+                if (next == 0) {
+                    next = trie.size();
+                    trie.add(new int[classCount]);
+                    output.add(null);
+                    trie.get(state)[charClass] = next;
+                }
+                state = next;
+            }
+            long[] bits = output.get(state);
+            if (bits == null) {
+                bits = new long[words];
+                output.set(state, bits);
+            }
+            bits[literalIndex >>> 6] |= 1L << literalIndex;
+        }
+
+        // Failure links, breadth first, folded into the transitions so matching never backtracks
+        int[] failure = new int[trie.size()];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int charClass = 1; charClass < classCount; charClass++) {
+            int child = trie.get(0)[charClass];
+            if (child != 0) {
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            long[] inherited = output.get(failure[state]);
+            if (inherited != null) {
+                long[] bits = output.get(state);
+                if (bits == null) {
+                    bits = new long[words];
+                    output.set(state, bits);
+                }
+                for (int i = 0; i < words; i++) {
+                    bits[i] |= inherited[i];
+                }
+            }
+
+            int[] row = trie.get(state);
+            for (int charClass = 1; charClass < classCount; charClass++) {
+                int child = row[charClass];
+                if (child != 0) {
+                    failure[child] = trie.get(failure[state])[charClass];
+                    queue.add(child);
+                } else {
+                    row[charClass] = trie.get(failure[state])[charClass];
+                }
+            }
+        }
+
+        this.transitions = new int[trie.size() * classCount];
+        this.outputs = new long[trie.size()][];
+        for (int state = 0; state < trie.size(); state++) {
+            System.arraycopy(trie.get(state), 0, transitions, state * classCount, classCount);
+            outputs[state] = output.get(state);
+        }
+    }
+
+    // Length of the bit set find() expects
+    int words() {
+        return words;
+    }
+
+    /**
+     * Sets the bit of every literal that occurs in the text; bits already set are left alone.
+     *
+     * @return whether any literal was found
+     */
+    boolean find(CharSequence text, long[] found) {
+        boolean any = false;
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = transitions[state * classCount + classOf(text.charAt(i))];
+            long[] bits = outputs[state];
+            if (bits != null) {
+                for (int word = 0; word < words; word++) {
+                    found[word] |= bits[word];
+                }
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClass[c];
+        }
+        int index = Arrays.binarySearch(otherChars, c);
+        return index >= 0 ? otherClasses[index] : 0;
+    }
+}
@@ -0,0 +1,53 @@
+package net.mcmetrics.plugin.listeners;
+
+/**
+ * A line handed to the regex engine that counts every character the engine reads and aborts the
+ * match once a budget is used up. Catastrophic backtracking, e.g. "(.+)+ issued" on a long line,
+ * reads the same characters over and over, so this stops it long before it would finish.
+ *
+ * Reused for every line; one instance per thread.
+ */
+final class BoundedCharSequence implements CharSequence {
+    private CharSequence text;
+    private long stepsLeft;
+
+    BoundedCharSequence reset(CharSequence text, long steps) {
+        this.text = text;
+        this.stepsLeft = steps;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--stepsLeft < 0) {
+            throw BudgetExceededException.INSTANCE;
+        }
+        return text.charAt(index);
+    }
+
+    // Groups are read once a match has succeeded, that isn't part of the budget
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    // Thrown from deep inside the regex engine, so there's no point in a stack trace
+    static final class BudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final BudgetExceededException INSTANCE = new BudgetExceededException();
+
+        private BudgetExceededException() {
+            super("Regex step budget exceeded", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package net.mcmetrics.plugin.listeners;
+
+import net.mcmetrics.plugin.MCMetricsSpigotPlugin;
+import net.mcmetrics.shared.MCMetricsAPI;
+import net.mcmetrics.shared.models.CustomEvent;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Custom events of type "bukkit-event": records a custom event whenever a Bukkit event fires, with
+ * the player and metadata read straight off the event object, e.g.
+ *
+ * <pre>
+ * - name: "command_executed"
+ *   type: "bukkit-event"
+ *   event: "PlayerCommandPreprocessEvent"
+ *   metadata:
+ *     - command:
+ *         key: "command"
+ *         path: "message"
+ * </pre>
+ *
+ * Event classes and getter paths are resolved when the config is loaded, and every configured event
+ * gets its own registration with the PluginManager.
+ */
+public class BukkitEventListener implements Listener {
+    // Where short event names like "PlayerDeathEvent" are looked up
+    private static final String[] EVENT_PACKAGES = {
+            "org.bukkit.event.player.",
+            "org.bukkit.event.entity.",
+            "org.bukkit.event.block.",
+            "org.bukkit.event.inventory.",
+            "org.bukkit.event.enchantment.",
+            "org.bukkit.event.vehicle.",
+            "org.bukkit.event.raid.",
+            "org.bukkit.event.world.",
+            "org.bukkit.event.server.",
+    };
+
+    private final MCMetricsSpigotPlugin plugin;
+    private List<EventSource> sources = Collections.emptyList();
+
+    public BukkitEventListener(MCMetricsSpigotPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    // Replaces whatever was registered before, so it doubles as reload
+    public void loadEvents() {
+        HandlerList.unregisterAll(this);
+
+        List<EventSource> sources = new ArrayList<>();
+        for (Map<String, Object> event : plugin.getConfigManager().getCustomEvents("main")) {
+            if (!"bukkit-event".equals(event.get("type"))) {
+                continue;
+            }
+
+            String name = (String) event.get("name");
+            try {
+                EventSource source = createSource(name, event);
+                plugin.getServer().getPluginManager().registerEvent(source.eventClass, this,
+                        EventPriority.MONITOR, (listener, fired) -> source.handle(fired), plugin,
+                        source.ignoreCancelled);
+                sources.add(source);
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning("Invalid bukkit-event config for event " + name + ": " + e.getMessage());
+            }
+        }
+
+        this.sources = sources;
+        if (!sources.isEmpty()) {
+            plugin.getLogger().info("Listening to " + sources.size() + " Bukkit events for custom events");
+        }
+    }
+
+    public void shutdown() {
+        HandlerList.unregisterAll(this);
+    }
+
+    public List<EventSource> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    private EventSource createSource(String name, Map<String, Object> event) {
+        if (name == null) {
+            throw new IllegalArgumentException("missing name");
+        }
+        Class<? extends Event> eventClass = findEventClass((String) event.get("event"));
+
+        GetterPath player = findPlayerPath(eventClass, (String) event.get("player"));
+        Class<?> playerType = player.getResultType();
+        if (playerType != UUID.class && !OfflinePlayer.class.isAssignableFrom(playerType)
+                && !playerType.isAssignableFrom(Player.class)) {
+            throw new IllegalArgumentException("player path " + player.getPath() + " doesn't lead to a player");
+        }
+
+        Map<String, GetterPath> metadata = new LinkedHashMap<>();
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> fields = (List<Map<String, Object>>) event.get("metadata");
+        if (fields != null) {
+            for (Map<String, Object> field : fields) {
+                for (Map.Entry<String, Object> entry : field.entrySet()) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> fieldConfig = (Map<String, Object>) entry.getValue();
+                    String key = (String) fieldConfig.get("key");
+                    String path = (String) fieldConfig.get("path");
+                    if (key != null && path != null) {
+                        metadata.put(key, GetterPath.compile(eventClass, path));
+                    }
+                }
+            }
+        }
+
+        String[] aggregateBy = ConsoleEventListener.parseAggregateBy(event.get("aggregate"));
+        GetterPath[] aggregatePaths = null;
+        if (aggregateBy != null) {
+            aggregatePaths = new GetterPath[aggregateBy.length];
+            for (int i = 0; i < aggregateBy.length; i++) {
+                aggregatePaths[i] = metadata.get(aggregateBy[i]);
+                if (aggregatePaths[i] == null) {
+                    throw new IllegalArgumentException("aggregate key " + aggregateBy[i] + " is not in the metadata");
+                }
+            }
+        }
+
+        boolean ignoreCancelled = !Boolean.FALSE.equals(event.get("ignore-cancelled"));
+        return new EventSource(name, eventClass, player, metadata, aggregateBy, aggregatePaths, ignoreCancelled);
+    }
+
+    // Player events have getPlayer(), the player's own entity events (PlayerDeathEvent) getEntity()
+    private GetterPath findPlayerPath(Class<? extends Event> eventClass, String path) {
+        if (path != null) {
+            return GetterPath.compile(eventClass, path);
+        }
+        try {
+            return GetterPath.compile(eventClass, "player");
+        } catch (IllegalArgumentException e) {
+            try {
+                return GetterPath.compile(eventClass, "entity");
+            } catch (IllegalArgumentException ignored) {
+                throw new IllegalArgumentException(eventClass.getSimpleName()
+                        + " has no player or entity, set 'player' to the getter path of the player");
+            }
+        }
+    }
+
+    private Class<? extends Event> findEventClass(String className) {
+        if (className == null || className.isEmpty()) {
+            throw new IllegalArgumentException("missing event class");
+        }
+
+        List<String> candidates = new ArrayList<>();
+        if (className.indexOf('.') >= 0) {
+            candidates.add(className);
+        } else {
+            for (String eventPackage : EVENT_PACKAGES) {
+                candidates.add(eventPackage + className);
+            }
+        }
+
+        for (String candidate : candidates) {
+            Class<?> type;
+            try {
+                // The plugin's class loader also sees other plugins' classes, for their events
+                type = Class.forName(candidate, false, plugin.getClass().getClassLoader());
+            } catch (ClassNotFoundException e) {
+                continue;
+            }
+            if (!Event.class.isAssignableFrom(type)) {
+                throw new IllegalArgumentException(candidate + " is not a Bukkit event");
+            }
+            return type.asSubclass(Event.class);
+        }
+        throw new IllegalArgumentException("unknown event class " + className);
+    }
+
+    public class EventSource {
+        private final String eventName;
+        private final Class<? extends Event> eventClass;
+        private final GetterPath player;
+        private final Map<String, GetterPath> metadata;
+        private final String[] aggregateBy; // null unless the event is aggregated
+        private final GetterPath[] aggregatePaths;
+        private final boolean ignoreCancelled;
+        private final AtomicLong recorded = new AtomicLong();
+
+        EventSource(String eventName, Class<? extends Event> eventClass, GetterPath player,
+                Map<String, GetterPath> metadata, String[] aggregateBy, GetterPath[] aggregatePaths,
+                boolean ignoreCancelled) {
+            this.eventName = eventName;
+            this.eventClass = eventClass;
+            this.player = player;
+            this.metadata = metadata;
+            this.aggregateBy = aggregateBy;
+            this.aggregatePaths = aggregatePaths;
+            this.ignoreCancelled = ignoreCancelled;
+        }
+
+        public String getEventName() {
+            return eventName;
+        }
+
+        public String getEventClassName() {
+            return eventClass.getSimpleName();
+        }
+
+        public long getRecordedCount() {
+            return recorded.get();
+        }
+
+        // May run on any thread, some events are fired asynchronously
+        private void handle(Event event) {
+            // Subclasses sharing a handler list are dispatched here too
+            if (!eventClass.isInstance(event)) {
+                return;
+            }
+            MCMetricsAPI api = plugin.getApi();
+            if (api == null) {
+                return;
+            }
+
+            try {
+                UUID playerUuid = toUuid(player.get(event));
+                if (playerUuid == null) {
+                    return;
+                }
+
+                if (aggregateBy != null) {
+                    Object[] values = new Object[aggregatePaths.length];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = toMetadataValue(aggregatePaths[i].get(event));
+                    }
+                    recorded.incrementAndGet();
+                    api.countCustomEvent(playerUuid, eventName, aggregateBy, values);
+                    return;
+                }
+
+                Map<String, Object> values = new HashMap<>();
+                for (Map.Entry<String, GetterPath> field : metadata.entrySet()) {
+                    values.put(field.getKey(), toMetadataValue(field.getValue().get(event)));
+                }
+
+                CustomEvent customEvent = new CustomEvent();
+                customEvent.player_uuid = playerUuid;
+                customEvent.event_type = eventName;
+                customEvent.timestamp = new Date();
+                customEvent.metadata = values;
+                recorded.incrementAndGet();
+
+                api.insertCustomEvent(customEvent)
+                        .exceptionally(e -> {
+                            api.logErrorWithRateLimit("CUSTOM_EVENT_UPLOAD_ERROR",
+                                    "Failed to record custom event " + eventName + ": " + e.getMessage());
+                            return null;
+                        });
+            } catch (RuntimeException e) {
+                api.logErrorWithRateLimit("BUKKIT_EVENT_ERROR",
+                        "Failed to read " + eventClass.getSimpleName() + " for custom event " + eventName + ": "
+                                + e.getMessage());
+            }
+        }
+    }
+
+    // Events about entities that aren't players, e.g. a zombie's death, have no player to record
+    private static UUID toUuid(Object value) {
+        if (value instanceof OfflinePlayer) {
+            return ((OfflinePlayer) value).getUniqueId();
+        }
+        if (value instanceof UUID) {
+            return (UUID) value;
+        }
+        return null;
+    }
+
+    private static Object toMetadataValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        return value.toString();
+    }
+}
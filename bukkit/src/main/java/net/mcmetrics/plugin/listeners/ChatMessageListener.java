@@ -1,13 +1,17 @@
 package net.mcmetrics.plugin.listeners;
 
 import net.mcmetrics.plugin.MCMetricsSpigotPlugin;
+import net.mcmetrics.shared.MCMetricsAPI;
 import net.mcmetrics.shared.models.ChatMessage;
-import org.bukkit.ChatColor;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
 
 public class ChatMessageListener implements Listener {
+    private static final char SECTION_SIGN = '\u00A7';
+    // Per chat thread, grown to the longest message seen
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[256]);
+
     private final MCMetricsSpigotPlugin plugin;
 
     public ChatMessageListener(MCMetricsSpigotPlugin plugin) {
@@ -23,21 +27,89 @@ public class ChatMessageListener implements Listener {
         chatMessage.player_uuid = event.getPlayer().getUniqueId();
         chatMessage.player_username = event.getPlayer().getName();
 
-        // Strip all color codes and formatting
-        String strippedMessage = ChatColor.stripColor(event.getMessage());
-        // Also strip any remaining & color codes that haven't been translated yet
-        strippedMessage = strippedMessage.replaceAll("&[0-9a-fk-orA-FK-OR]", "");
-        // Remove any excessive whitespace
-        strippedMessage = strippedMessage.trim().replaceAll("\\s+", " ");
-
-        chatMessage.message = strippedMessage;
-
-        plugin.getApi().insertChatMessage(chatMessage)
-                .exceptionally(throwable -> {
-                    if (plugin.getConfigManager().getBoolean("main", "debug")) {
-                        plugin.getLogger().warning("Failed to record chat message: " + throwable.getMessage());
-                    }
-                    return null;
-                });
+        chatMessage.message = sanitize(event.getMessage());
+
+        // Shipped in bulk; during a flood whatever doesn't fit the buffer is dropped and counted
+        MCMetricsAPI api = plugin.getApi();
+        if (api != null) {
+            api.bufferChatMessage(chatMessage);
+        }
+    }
+
+    /**
+     * Strips section-sign and ampersand color codes, trims the message and collapses whitespace
+     * runs to a single space, in one pass over the characters. Ampersand codes are those left once
+     * the section-sign codes are gone, as if the two were stripped one after the other. Messages
+     * that need no change are returned as they are.
+     */
+    public static String sanitize(String message) {
+        int length = message.length();
+        char[] out = SCRATCH.get();
+        if (out.length < length) {
+            out = new char[Math.max(length, out.length * 2)];
+            SCRATCH.set(out);
+        }
+
+        int size = 0;
+        boolean changed = false;
+        boolean ampersandBefore = false; // the last character kept from stripping is an emitted '&'
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (c == SECTION_SIGN && i + 1 < length && isSectionCode(message.charAt(i + 1))) {
+                i++;
+                changed = true;
+                continue;
+            }
+
+            if (ampersandBefore && isAmpersandCode(c)) {
+                size--;
+                ampersandBefore = false;
+                changed = true;
+                continue;
+            }
+            ampersandBefore = c == '&';
+
+            if (isWhitespace(c)) {
+                // Leading whitespace is trimmed and runs become a single space
+                if (size == 0 || out[size - 1] == ' ') {
+                    changed = true;
+                    continue;
+                }
+                if (c != ' ') {
+                    changed = true;
+                }
+                c = ' ';
+            } else if (c <= ' ' && size == 0) {
+                // trim() also drops control characters at either end
+                changed = true;
+                continue;
+            }
+            out[size++] = c;
+        }
+
+        while (size > 0 && out[size - 1] <= ' ') {
+            size--;
+            changed = true;
+        }
+        return changed ? new String(out, 0, size) : message;
+    }
+
+    // The characters \s matches
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // What ChatColor.stripColor removes after a section sign, in either case
+    private static boolean isSectionCode(char c) {
+        char lower = (char) (c | 0x20);
+        return (c >= '0' && c <= '9') || (lower >= 'a' && lower <= 'f') || (lower >= 'k' && lower <= 'o')
+                || lower == 'r' || lower == 'x';
+    }
+
+    // Untranslated codes, &x is left alone
+    private static boolean isAmpersandCode(char c) {
+        char lower = (char) (c | 0x20);
+        return (c >= '0' && c <= '9') || (lower >= 'a' && lower <= 'f') || (lower >= 'k' && lower <= 'o')
+                || lower == 'r';
     }
-}
\ No newline at end of file
+}
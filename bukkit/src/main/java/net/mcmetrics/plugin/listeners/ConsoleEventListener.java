@@ -1,31 +1,55 @@
 package net.mcmetrics.plugin.listeners;
 
 import net.mcmetrics.plugin.MCMetricsSpigotPlugin;
+import net.mcmetrics.plugin.listeners.ConsoleEventMatcher.ConsoleEventConfig;
+import net.mcmetrics.plugin.listeners.ConsoleEventMatcher.Match;
+import net.mcmetrics.plugin.listeners.ConsoleEventMatcher.MetadataField;
+import net.mcmetrics.plugin.listeners.ConsoleEventMatcher.PatternStats;
+import net.mcmetrics.shared.MCMetricsAPI;
 import net.mcmetrics.shared.models.CustomEvent;
+import net.mcmetrics.shared.pipeline.RingBuffer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.Logger;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.appender.AbstractAppender;
 import org.apache.logging.log4j.core.config.Property;
-import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
 import org.bukkit.event.Listener;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.*;
-import java.util.regex.Matcher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.regex.Pattern;
 
+/**
+ * Turns console lines into custom events. The appender only puts each log event into a bounded
+ * buffer; a dedicated matcher thread runs the patterns, so no regex work happens on the thread that
+ * logged the line, which is often the main thread. Lines are skipped and counted if the matcher
+ * falls too far behind.
+ */
 public class ConsoleEventListener implements Listener {
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final long DROP_WARNING_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
     private final MCMetricsSpigotPlugin plugin;
-    private final Map<Pattern, ConsoleEventConfig> eventPatterns = new HashMap<>();
-    private static final Pattern TIMESTAMP_PATTERN = Pattern
-            .compile("\\[\\d{2}:\\d{2}:\\d{2}(?:\\s+[A-Z]+)?\\]:\\s*(.*)");
+    private final RingBuffer<LogEvent> lines = new RingBuffer<>(QUEUE_CAPACITY);
+    private final AtomicLong processedLines = new AtomicLong();
+    private final AtomicLong matchedLines = new AtomicLong();
+    private final AtomicLong droppedLines = new AtomicLong();
+    private final AtomicLong filteredLines = new AtomicLong();
+    // Replaced as a whole on reload, the matcher thread may be using the old one
+    private volatile ConsoleEventMatcher matcher;
+    private volatile boolean running = true;
+    private volatile boolean matcherParked;
+    private final Thread matcherThread;
     private ConsoleAppender appender;
 
     public ConsoleEventListener(MCMetricsSpigotPlugin plugin) {
         this.plugin = plugin;
         loadEventPatterns();
+        matcherThread = new Thread(this::runMatcher, "MCMetrics-ConsoleMatcher");
+        matcherThread.setDaemon(true);
+        matcherThread.start();
         setupConsoleAppender();
     }
 
@@ -42,9 +66,22 @@ public class ConsoleEventListener implements Listener {
 
         @Override
         public void append(LogEvent event) {
-            String message = event.getMessage().getFormattedMessage();
-            // Process on the main thread to avoid concurrent modification issues
-            Bukkit.getScheduler().runTask(plugin, () -> processConsoleMessage(message));
+            // Lines no pattern could match are dropped here, before anything is formatted or copied
+            String loggerName = event.getLoggerName();
+            if (plugin.getName().equals(loggerName)
+                    || !matcher.acceptsSource(loggerName, event.getLevel().name())) {
+                filteredLines.incrementAndGet();
+                return;
+            }
+
+            // Reusable events are overwritten once this returns, so those are copied
+            if (!lines.offer(event.toImmutable())) {
+                droppedLines.incrementAndGet();
+                return;
+            }
+            if (matcherParked) {
+                LockSupport.unpark(matcherThread);
+            }
         }
     }
 
@@ -55,10 +92,52 @@ public class ConsoleEventListener implements Listener {
             // Then remove from root logger
             ((Logger) LogManager.getRootLogger()).removeAppender(appender);
         }
+
+        running = false;
+        LockSupport.unpark(matcherThread);
+        try {
+            matcherThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runMatcher() {
+        long reportedDrops = 0;
+        long lastDropWarning = 0;
+
+        while (running) {
+            LogEvent event = lines.poll();
+            if (event == null) {
+                long dropped = droppedLines.get();
+                if (dropped > reportedDrops
+                        && System.currentTimeMillis() - lastDropWarning > DROP_WARNING_INTERVAL_MS) {
+                    plugin.getLogger().warning("Console event matching fell behind, skipped "
+                            + (dropped - reportedDrops) + " console lines");
+                    reportedDrops = dropped;
+                    lastDropWarning = System.currentTimeMillis();
+                }
+
+                matcherParked = true;
+                // Checked again after announcing the park, so a line offered in between isn't missed
+                if (lines.isEmpty()) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                }
+                matcherParked = false;
+                continue;
+            }
+
+            try {
+                processConsoleMessage(event.getLoggerName(), event.getLevel().name(),
+                        event.getMessage().getFormattedMessage());
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning("Failed to process console line: " + e.getMessage());
+            }
+        }
     }
 
     public void loadEventPatterns() {
-        eventPatterns.clear();
+        ConsoleEventMatcher matcher = new ConsoleEventMatcher(plugin.getLogger());
         List<Map<String, Object>> customEvents = plugin.getConfigManager().getCustomEvents("main");
 
         int successfulPatterns = 0;
@@ -73,28 +152,75 @@ public class ConsoleEventListener implements Listener {
             String name = (String) event.get("name");
             String consolePattern = (String) event.get("console-pattern");
             Integer playerField = (Integer) event.get("player-field");
+            String loggerPrefix = (String) event.get("console-logger");
+            Set<String> levels = parseLevels(event.get("console-levels"));
 
             plugin.getLogger().info("Found console event config: " + name + " (pattern: " + consolePattern + ")");
 
             @SuppressWarnings("unchecked")
             List<Map<String, Object>> metadata = (List<Map<String, Object>>) event.get("metadata");
 
-            ConsoleEventConfig config = new ConsoleEventConfig(
-                    name,
-                    playerField,
-                    parseMetadataConfig(metadata));
-
             try {
+                ConsoleEventConfig config = new ConsoleEventConfig(
+                        name,
+                        playerField,
+                        parseMetadataConfig(metadata),
+                        loggerPrefix,
+                        levels,
+                        parseAggregateBy(event.get("aggregate")));
                 Pattern pattern = Pattern.compile(consolePattern);
-                eventPatterns.put(pattern, config);
+                matcher.addPattern(pattern, config);
                 successfulPatterns++;
                 plugin.getLogger().info("Successfully compiled pattern for: " + name);
             } catch (Exception e) {
-                plugin.getLogger().warning("Invalid console pattern for event " + name + ": " + e.getMessage());
+                plugin.getLogger().warning("Invalid console event config for event " + name + ": " + e.getMessage());
             }
         }
 
+        this.matcher = matcher;
         plugin.getLogger().info("Loaded " + successfulPatterns + " console event patterns successfully");
+        if (matcher.getUnfilteredPatternCount() > 0) {
+            plugin.getLogger().info(matcher.getUnfilteredPatternCount()
+                    + " console patterns have no fixed text to look for and are checked against every line");
+        }
+    }
+
+    /**
+     * "aggregate: true" counts the event per player, "aggregate: {by: [key, ...]}" also per value of
+     * those metadata keys.
+     *
+     * @return the keys, empty to count per player only, or null if the event isn't aggregated
+     */
+    static String[] parseAggregateBy(Object value) {
+        if (Boolean.TRUE.equals(value)) {
+            return new String[0];
+        }
+        if (!(value instanceof Map)) {
+            return null;
+        }
+        Object by = ((Map<?, ?>) value).get("by");
+        if (by instanceof String) {
+            return new String[] {(String) by};
+        }
+        List<String> keys = new ArrayList<>();
+        if (by instanceof List) {
+            for (Object key : (List<?>) by) {
+                keys.add(String.valueOf(key));
+            }
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    // e.g. [INFO, WARN], null if the event doesn't restrict levels
+    private Set<String> parseLevels(Object value) {
+        if (!(value instanceof List) || ((List<?>) value).isEmpty()) {
+            return null;
+        }
+        Set<String> levels = new HashSet<>();
+        for (Object level : (List<?>) value) {
+            levels.add(String.valueOf(level).trim().toUpperCase(Locale.ROOT));
+        }
+        return levels;
     }
 
     private List<MetadataField> parseMetadataConfig(List<Map<String, Object>> metadata) {
@@ -117,102 +243,92 @@ public class ConsoleEventListener implements Listener {
     }
 
     public void processConsoleMessage(String message) {
+        processConsoleMessage(null, null, message);
+    }
 
-        // Try matching both the original message and the message with timestamp removed
-        String messageWithoutTimestamp = message;
-        Matcher timestampMatcher = TIMESTAMP_PATTERN.matcher(message);
-        if (timestampMatcher.matches()) {
-            messageWithoutTimestamp = timestampMatcher.group(1);
+    // loggerName and level may be null if unknown, which skips those filters
+    public void processConsoleMessage(String loggerName, String level, String message) {
+        processedLines.incrementAndGet();
+        Match match = matcher.match(loggerName, level, message);
+        if (match == null) {
+            return;
         }
+        matchedLines.incrementAndGet();
 
-        // Try both versions of the message
-        if (!tryMatchMessage(message)) {
-            tryMatchMessage(messageWithoutTimestamp);
+        UUID playerUuid = plugin.getPlayerIndex().resolve(match.playerIdentifier);
+        if (playerUuid != null) {
+            recordEvent(match, playerUuid);
         }
     }
 
-    private boolean tryMatchMessage(String message) {
-        for (Map.Entry<Pattern, ConsoleEventConfig> entry : eventPatterns.entrySet()) {
-            Matcher matcher = entry.getKey().matcher(message);
+    private void recordEvent(Match match, UUID playerUuid) {
+        MCMetricsAPI api = plugin.getApi();
+        if (api == null) {
+            return;
+        }
+        if (match.isAggregated()) {
+            api.countCustomEvent(playerUuid, match.eventName, match.aggregateBy, match.aggregateValues);
+            return;
+        }
 
-            if (matcher.matches()) {
-                ConsoleEventConfig config = entry.getValue();
+        CustomEvent customEvent = new CustomEvent();
+        customEvent.player_uuid = playerUuid;
+        customEvent.event_type = match.eventName;
+        customEvent.timestamp = new Date();
+        customEvent.metadata = match.metadata;
 
-                String playerIdentifier = null;
-                if (config.playerField <= matcher.groupCount()) {
-                    playerIdentifier = matcher.group(config.playerField);
-                }
+        api.insertCustomEvent(customEvent)
+                .thenRun(() -> {
+                    if (plugin.getConfigManager().getBoolean("main", "debug")) {
+                        plugin.getLogger().info("Console-triggered custom event recorded: " + match.eventName);
+                    }
+                })
+                .exceptionally(e -> {
+                    // Use rate-limited logging for custom event upload errors
+                    api.logErrorWithRateLimit("CUSTOM_EVENT_UPLOAD_ERROR",
+                            "Failed to record console-triggered custom event " + match.eventName
+                                    + ": " + e.getMessage());
+                    return null;
+                });
+    }
 
-                if (playerIdentifier == null) {
-                    plugin.getLogger().warning(
-                            "Could not find player identifier in console message for event " + config.eventName);
-                    continue;
-                }
+    public long getProcessedLineCount() {
+        return processedLines.get();
+    }
 
-                Map<String, Object> metadata = new HashMap<>();
-                for (MetadataField field : config.metadataFields) {
-                    if (field.fieldIndex <= matcher.groupCount()) {
-                        metadata.put(field.key, matcher.group(field.fieldIndex));
-                    }
-                }
+    // Lines skipped by logger and level before being formatted
+    public long getFilteredLineCount() {
+        return filteredLines.get();
+    }
 
-                final String finalPlayerIdentifier = playerIdentifier;
-
-                // fire the event asynchronously
-                new BukkitRunnable() {
-                    @Override
-                    public void run() {
-                        UUID playerUuid = resolvePlayerIdentifier(finalPlayerIdentifier);
-                        if (playerUuid != null) {
-                            CustomEvent customEvent = new CustomEvent();
-                            customEvent.player_uuid = playerUuid;
-                            customEvent.event_type = config.eventName;
-                            customEvent.timestamp = new Date();
-                            customEvent.metadata = metadata;
-
-                            plugin.getApi().insertCustomEvent(customEvent)
-                                    .thenRun(() -> {
-                                        if (plugin.getConfigManager().getBoolean("main", "debug")) {
-                                            plugin.getLogger().info(
-                                                    "Console-triggered custom event recorded: " + config.eventName);
-                                        }
-                                    })
-                                    .exceptionally(e -> {
-                                        // Use rate-limited logging for custom event upload errors
-                                        plugin.getApi().logErrorWithRateLimit("CUSTOM_EVENT_UPLOAD_ERROR",
-                                                "Failed to record console-triggered custom event " + config.eventName
-                                                        + ": " + e.getMessage());
-                                        return null;
-                                    });
-                        }
-                    }
-                }.runTaskAsynchronously(plugin);
-                return true;
-            }
-        }
-        return false;
+    public long getMatchedLineCount() {
+        return matchedLines.get();
     }
 
-    private UUID resolvePlayerIdentifier(String identifier) {
-        // Try parsing as UUID first
-        try {
-            return UUID.fromString(identifier);
-        } catch (IllegalArgumentException ignored) {
-            // If not a UUID, try to find player by name
-            Player player = Bukkit.getPlayer(identifier);
-            return player != null ? player.getUniqueId() : null;
-        }
+    // Lines skipped because the matcher thread fell too far behind
+    public long getDroppedLineCount() {
+        return droppedLines.get();
+    }
+
+    public int getQueuedLineCount() {
+        return lines.size();
+    }
+
+    public int getQueueCapacity() {
+        return lines.capacity();
     }
 
     public static class EventPatternInfo {
         private final String name;
         private final String pattern;
         private final int playerField;
+        private final PatternStats stats;
 
-        public EventPatternInfo(String name, String pattern, int playerField) {
+        public EventPatternInfo(String name, String pattern, int playerField, PatternStats stats) {
             this.name = name;
             this.pattern = pattern;
             this.playerField = playerField;
+            this.stats = stats;
         }
 
         public String getName() {
@@ -226,38 +342,24 @@ public class ConsoleEventListener implements Listener {
         public int getPlayerField() {
             return playerField;
         }
+
+        // Counters since the patterns were last loaded
+        public PatternStats getStats() {
+            return stats;
+        }
     }
 
     public List<EventPatternInfo> getEventPatternsInfo() {
+        ConsoleEventMatcher matcher = this.matcher;
         List<EventPatternInfo> patterns = new ArrayList<>();
-        for (Map.Entry<Pattern, ConsoleEventConfig> entry : eventPatterns.entrySet()) {
+        int index = 0;
+        for (Map.Entry<Pattern, ConsoleEventConfig> entry : matcher.getPatterns().entrySet()) {
             patterns.add(new EventPatternInfo(
                     entry.getValue().eventName,
                     entry.getKey().pattern(),
-                    entry.getValue().playerField));
+                    entry.getValue().playerField,
+                    matcher.getPatternStats().get(index++)));
         }
         return patterns;
     }
-
-    private static class ConsoleEventConfig {
-        final String eventName;
-        final int playerField;
-        final List<MetadataField> metadataFields;
-
-        ConsoleEventConfig(String eventName, int playerField, List<MetadataField> metadataFields) {
-            this.eventName = eventName;
-            this.playerField = playerField;
-            this.metadataFields = metadataFields;
-        }
-    }
-
-    private static class MetadataField {
-        final String key;
-        final int fieldIndex;
-
-        MetadataField(String key, int fieldIndex) {
-            this.key = key;
-            this.fieldIndex = fieldIndex;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,357 @@
+package net.mcmetrics.plugin.listeners;
+
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches console lines against the configured console custom events. Has no Bukkit dependencies,
+ * so it can be benchmarked on its own; {@link ConsoleEventListener} turns matches into events.
+ *
+ * Almost no line matches any pattern, so each pattern's required literal (see {@link RegexLiterals})
+ * is looked up first with one Aho-Corasick pass over the line. Only patterns whose literal occurs
+ * are run; the few without a usable literal are always run. A "[12:34:56 INFO]: " prefix some
+ * plugins put in their messages is skipped, and every pattern runs at most once per line.
+ *
+ * Every pattern run is timed and counted, and reads at most {@link #MAX_STEPS} characters. A
+ * pattern that backtracks past that is aborted and disabled until the patterns are reloaded, so one
+ * bad console-pattern can't stall the matcher thread on every line.
+ *
+ * Matching reuses per-pattern Matchers, so a matcher must only be used by one thread at a time.
+ */
+public class ConsoleEventMatcher {
+    // Characters a pattern may read per line; typical patterns need a few hundred
+    static final long MAX_STEPS = 1_000_000;
+
+    private final Map<Pattern, ConsoleEventConfig> eventPatterns = new LinkedHashMap<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final List<ConsoleEventConfig> configs = new ArrayList<>();
+    private final List<String> literals = new ArrayList<>(); // null where a pattern has none
+    private final List<Matcher> matchers = new ArrayList<>();
+    private final List<PatternStats> stats = new ArrayList<>();
+    private final BoundedCharSequence boundedLine = new BoundedCharSequence();
+    private final Logger logger;
+    private AhoCorasick literalIndex = new AhoCorasick(Collections.emptyList());
+    private int unfilteredPatterns;
+    private boolean anySource; // some pattern accepts lines from every logger and level
+
+    public ConsoleEventMatcher(Logger logger) {
+        this.logger = logger;
+    }
+
+    // Not thread-safe; build the matcher fully before handing it to the thread that matches
+    public void addPattern(Pattern pattern, ConsoleEventConfig config) {
+        eventPatterns.put(pattern, config);
+        patterns.add(pattern);
+        configs.add(config);
+        matchers.add(pattern.matcher(""));
+        stats.add(new PatternStats(pattern.pattern(), config.eventName));
+        String literal = RegexLiterals.requiredLiteral(pattern);
+        literals.add(literal);
+        if (literal == null) {
+            unfilteredPatterns++;
+        }
+        if (config.loggerPrefix == null && config.levels == null) {
+            anySource = true;
+        }
+        literalIndex = new AhoCorasick(literals);
+    }
+
+    // Patterns that can't be skipped by the literal prefilter and run on every line
+    public int getUnfilteredPatternCount() {
+        return unfilteredPatterns;
+    }
+
+    public Map<Pattern, ConsoleEventConfig> getPatterns() {
+        return Collections.unmodifiableMap(eventPatterns);
+    }
+
+    // In the order the patterns were added
+    public List<PatternStats> getPatternStats() {
+        return Collections.unmodifiableList(stats);
+    }
+
+    /**
+     * Whether any pattern could match a line from this logger at this level. Meant to be checked
+     * before the log message is formatted at all.
+     */
+    public boolean acceptsSource(String loggerName, String level) {
+        if (anySource) {
+            return true;
+        }
+        for (ConsoleEventConfig config : configs) {
+            if (config.acceptsSource(loggerName, level)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches a line whose logger and level are unknown, so logger and level filters are ignored.
+     *
+     * @return the first configured event matching the line, or null if none does
+     */
+    public Match match(String message) {
+        return match(null, null, message);
+    }
+
+    /**
+     * @return the first configured event matching the line, or null if none does
+     */
+    public Match match(String loggerName, String level, String message) {
+        // The line without its timestamp is part of the line, so one scan covers it
+        long[] candidates = new long[literalIndex.words()];
+        if (!literalIndex.find(message, candidates) && unfilteredPatterns == 0) {
+            return null;
+        }
+
+        int start = timestampEnd(message);
+        for (int i = 0; i < patterns.size(); i++) {
+            if (literals.get(i) != null && (candidates[i >>> 6] & (1L << i)) == 0) {
+                continue;
+            }
+            ConsoleEventConfig config = configs.get(i);
+            PatternStats patternStats = stats.get(i);
+            if (patternStats.disabled || (loggerName != null && !config.acceptsSource(loggerName, level))) {
+                continue;
+            }
+
+            Matcher matcher = matchers.get(i).reset(boundedLine.reset(message, MAX_STEPS));
+            if (start > 0) {
+                matcher.region(start, message.length());
+            }
+            if (runPattern(matcher, patternStats)) {
+                String playerIdentifier = null;
+                if (config.playerField <= matcher.groupCount()) {
+                    playerIdentifier = matcher.group(config.playerField);
+                }
+
+                if (playerIdentifier == null) {
+                    logger.warning(
+                            "Could not find player identifier in console message for event " + config.eventName);
+                    continue;
+                }
+
+                if (config.isAggregated()) {
+                    // Only the values the rollup is split by, no metadata map
+                    Object[] values = new Object[config.aggregateFields.length];
+                    for (int field = 0; field < values.length; field++) {
+                        if (config.aggregateFields[field] <= matcher.groupCount()) {
+                            values[field] = matcher.group(config.aggregateFields[field]);
+                        }
+                    }
+                    return new Match(config.eventName, playerIdentifier, null, config.aggregateBy, values);
+                }
+
+                Map<String, Object> metadata = new HashMap<>();
+                for (MetadataField field : config.metadataFields) {
+                    if (field.fieldIndex <= matcher.groupCount()) {
+                        metadata.put(field.key, matcher.group(field.fieldIndex));
+                    }
+                }
+
+                return new Match(config.eventName, playerIdentifier, metadata);
+            }
+        }
+        return null;
+    }
+
+    // Whether the pattern matched; false if it didn't or used up its step budget
+    private boolean runPattern(Matcher matcher, PatternStats patternStats) {
+        long started = System.nanoTime();
+        boolean matched;
+        try {
+            matched = matcher.matches();
+        } catch (BoundedCharSequence.BudgetExceededException e) {
+            patternStats.record(System.nanoTime() - started, false);
+            patternStats.disabled = true;
+            logger.warning("Disabled console event " + patternStats.eventName + ": its pattern "
+                    + patternStats.pattern + " backtracked too much on a console line. Fix the pattern and reload.");
+            return false;
+        }
+        patternStats.record(System.nanoTime() - started, matched);
+        return matched;
+    }
+
+    /**
+     * Where the text starts after a "[12:34:56]: " or "[12:34:56 INFO]: " prefix, or 0 if the line
+     * has none.
+     */
+    static int timestampEnd(CharSequence line) {
+        int length = line.length();
+        if (length < 11 || line.charAt(0) != '['
+                || !isDigit(line.charAt(1)) || !isDigit(line.charAt(2)) || line.charAt(3) != ':'
+                || !isDigit(line.charAt(4)) || !isDigit(line.charAt(5)) || line.charAt(6) != ':'
+                || !isDigit(line.charAt(7)) || !isDigit(line.charAt(8))) {
+            return 0;
+        }
+
+        int i = 9;
+        if (i < length && Character.isWhitespace(line.charAt(i))) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            int levelStart = i;
+            while (i < length && line.charAt(i) >= 'A' && line.charAt(i) <= 'Z') {
+                i++;
+            }
+            if (i == levelStart) {
+                return 0;
+            }
+        }
+        if (i + 1 >= length || line.charAt(i) != ']' || line.charAt(i + 1) != ':') {
+            return 0;
+        }
+        i += 2;
+        while (i < length && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Cost of one pattern so far. Only the matcher thread writes these, anyone may read them.
+     */
+    public static class PatternStats {
+        public final String pattern;
+        public final String eventName;
+        private volatile long evaluations;
+        private volatile long matches;
+        private volatile long totalNanos;
+        private volatile long maxNanos;
+        private volatile boolean disabled;
+
+        PatternStats(String pattern, String eventName) {
+            this.pattern = pattern;
+            this.eventName = eventName;
+        }
+
+        private void record(long nanos, boolean matched) {
+            evaluations++;
+            if (matched) {
+                matches++;
+            }
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+        }
+
+        // Lines the regex actually ran on, after the literal prefilter and source filters
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        public long getMatches() {
+            return matches;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        // Disabled after exceeding the step budget on some line
+        public boolean isDisabled() {
+            return disabled;
+        }
+    }
+
+    public static class Match {
+        public final String eventName;
+        public final String playerIdentifier;
+        public final Map<String, Object> metadata; // null for aggregated events
+        public final String[] aggregateBy; // null unless aggregated
+        public final Object[] aggregateValues;
+
+        public Match(String eventName, String playerIdentifier, Map<String, Object> metadata) {
+            this(eventName, playerIdentifier, metadata, null, null);
+        }
+
+        public Match(String eventName, String playerIdentifier, Map<String, Object> metadata, String[] aggregateBy,
+                Object[] aggregateValues) {
+            this.eventName = eventName;
+            this.playerIdentifier = playerIdentifier;
+            this.metadata = metadata;
+            this.aggregateBy = aggregateBy;
+            this.aggregateValues = aggregateValues;
+        }
+
+        public boolean isAggregated() {
+            return aggregateBy != null;
+        }
+    }
+
+    public static class ConsoleEventConfig {
+        public final String eventName;
+        public final int playerField;
+        public final List<MetadataField> metadataFields;
+        public final String loggerPrefix; // null for any logger
+        public final Set<String> levels; // upper-case level names, null for any level
+        // Metadata keys counted separately when the event is aggregated, null if it isn't
+        public final String[] aggregateBy;
+        final int[] aggregateFields;
+
+        public ConsoleEventConfig(String eventName, int playerField, List<MetadataField> metadataFields) {
+            this(eventName, playerField, metadataFields, null, null, null);
+        }
+
+        public ConsoleEventConfig(String eventName, int playerField, List<MetadataField> metadataFields,
+                String loggerPrefix, Set<String> levels) {
+            this(eventName, playerField, metadataFields, loggerPrefix, levels, null);
+        }
+
+        /**
+         * @throws IllegalArgumentException if aggregateBy names a key that isn't in the metadata
+         */
+        public ConsoleEventConfig(String eventName, int playerField, List<MetadataField> metadataFields,
+                String loggerPrefix, Set<String> levels, String[] aggregateBy) {
+            this.eventName = eventName;
+            this.playerField = playerField;
+            this.metadataFields = metadataFields;
+            this.loggerPrefix = loggerPrefix;
+            this.levels = levels;
+            this.aggregateBy = aggregateBy;
+            this.aggregateFields = aggregateBy != null ? new int[aggregateBy.length] : null;
+            for (int i = 0; aggregateBy != null && i < aggregateBy.length; i++) {
+                aggregateFields[i] = -1;
+                for (MetadataField field : metadataFields) {
+                    if (field.key.equals(aggregateBy[i])) {
+                        aggregateFields[i] = field.fieldIndex;
+                    }
+                }
+                if (aggregateFields[i] < 0) {
+                    throw new IllegalArgumentException("aggregate key " + aggregateBy[i] + " is not in the metadata");
+                }
+            }
+        }
+
+        public boolean isAggregated() {
+            return aggregateBy != null;
+        }
+
+        boolean acceptsSource(String loggerName, String level) {
+            return (loggerPrefix == null || (loggerName != null && loggerName.startsWith(loggerPrefix)))
+                    && (levels == null || levels.contains(level));
+        }
+    }
+
+    public static class MetadataField {
+        public final String key;
+        public final int fieldIndex;
+
+        public MetadataField(String key, int fieldIndex) {
+            this.key = key;
+            this.fieldIndex = fieldIndex;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package net.mcmetrics.plugin.listeners;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * A chain of getters like "player.location.world.name", resolved against a class once so reading
+ * it from an object is a few direct method handle calls. Each part names a public no-argument
+ * method: "name" finds getName(), isName() or name(), in that order.
+ */
+final class GetterPath {
+    private static final MethodType OBJECT_GETTER = MethodType.methodType(Object.class, Object.class);
+
+    private final String path;
+    private final MethodHandle[] getters;
+    private final Class<?> resultType;
+
+    private GetterPath(String path, MethodHandle[] getters, Class<?> resultType) {
+        this.path = path;
+        this.getters = getters;
+        this.resultType = resultType;
+    }
+
+    /**
+     * @throws IllegalArgumentException if some part of the path doesn't name a getter
+     */
+    static GetterPath compile(Class<?> type, String path) {
+        if (path == null || path.trim().isEmpty()) {
+            throw new IllegalArgumentException("Empty getter path");
+        }
+
+        String[] parts = path.trim().split("\\.");
+        MethodHandle[] getters = new MethodHandle[parts.length];
+        Class<?> current = type;
+        for (int i = 0; i < parts.length; i++) {
+            Method method = findGetter(current, parts[i]);
+            if (method == null) {
+                throw new IllegalArgumentException("No getter for '" + parts[i] + "' on " + current.getSimpleName());
+            }
+            try {
+                getters[i] = MethodHandles.publicLookup().unreflect(method).asType(OBJECT_GETTER);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Getter " + method.getName() + " on " + current.getSimpleName()
+                        + " isn't accessible");
+            }
+            current = method.getReturnType();
+        }
+        return new GetterPath(path, getters, current);
+    }
+
+    // Null if anything along the path is null
+    Object get(Object root) {
+        Object value = root;
+        try {
+            for (MethodHandle getter : getters) {
+                value = getter.invokeExact(value);
+                if (value == null) {
+                    return null;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Getter path " + path + " failed", e);
+        }
+        return value;
+    }
+
+    Class<?> getResultType() {
+        return resultType;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    private static Method findGetter(Class<?> type, String name) {
+        if (name.isEmpty()) {
+            return null;
+        }
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (String candidate : new String[] {"get" + capitalized, "is" + capitalized, name}) {
+            try {
+                Method method = type.getMethod(candidate);
+                if (method.getReturnType() != void.class && !Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignored) {
+            }
+        }
+        return null;
+    }
+}
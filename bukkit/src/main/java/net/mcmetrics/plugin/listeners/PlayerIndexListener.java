@@ -0,0 +1,32 @@
+package net.mcmetrics.plugin.listeners;
+
+import net.mcmetrics.plugin.PlayerIndex;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+public class PlayerIndexListener implements Listener {
+
+    private final PlayerIndex playerIndex;
+
+    public PlayerIndexListener(PlayerIndex playerIndex) {
+        this.playerIndex = playerIndex;
+    }
+
+    // Before other plugins handle the join, so their console lines about the player resolve
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        playerIndex.playerJoined(player.getUniqueId(), player.getName());
+    }
+
+    // After everything else, the player is still online while quit handlers run
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        Player player = event.getPlayer();
+        playerIndex.playerQuit(player.getUniqueId(), player.getName());
+    }
+}
@@ -1,8 +1,8 @@
 package net.mcmetrics.plugin.listeners;
 
 import net.mcmetrics.plugin.MCMetricsSpigotPlugin;
-import net.mcmetrics.plugin.SessionManager;
 import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.session.SessionManager;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -0,0 +1,215 @@
+package net.mcmetrics.plugin.listeners;
+
+import java.util.regex.Pattern;
+
+/**
+ * Finds text that every match of a regex has to contain, e.g. " issued server command: " in
+ * "(.+) issued server command: (.*)". Deliberately conservative: anything it doesn't fully
+ * understand ends the current run of literal characters, so the result is always safe to use as a
+ * prefilter, just sometimes shorter than it could be.
+ */
+final class RegexLiterals {
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private RegexLiterals() {
+    }
+
+    /**
+     * @return the longest literal every match must contain, or null if there is none
+     */
+    static String requiredLiteral(Pattern pattern) {
+        if ((pattern.flags() & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.LITERAL)) != 0) {
+            return null;
+        }
+
+        String regex = pattern.pattern();
+        if (hasInlineFlags(regex)) {
+            return null;
+        }
+
+        String best = null;
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            int next;
+            Character literal = null;
+
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    return null;
+                }
+                char escaped = regex.charAt(i + 1);
+                if (escaped == 'Q') {
+                    // Quoted sections are rare in console patterns, just skip past them
+                    int end = regex.indexOf("\\E", i + 2);
+                    next = end < 0 ? regex.length() : end + 2;
+                } else if (!Character.isLetterOrDigit(escaped)) {
+                    // Escaped punctuation is a literal
+                    literal = escaped;
+                    next = i + 2;
+                } else {
+                    // Letters and digits are classes, backreferences, hex escapes and the like
+                    next = escapeEnd(regex, i);
+                }
+            } else if (c == '|') {
+                // A top-level alternation means no single literal is required
+                return null;
+            } else if (c == '(') {
+                next = skipGroup(regex, i);
+                if (next < 0) {
+                    return null;
+                }
+            } else if (c == '[') {
+                next = skipCharacterClass(regex, i);
+                if (next < 0) {
+                    return null;
+                }
+            } else {
+                if (METACHARACTERS.indexOf(c) < 0) {
+                    literal = c;
+                }
+                next = i + 1;
+            }
+
+            // A quantifier on the character decides whether it has to be there at all
+            boolean required = true;
+            boolean endsRun = literal == null;
+            if (next < regex.length()) {
+                char quantifier = regex.charAt(next);
+                if (quantifier == '?' || quantifier == '*') {
+                    required = false;
+                    endsRun = true;
+                } else if (quantifier == '+') {
+                    endsRun = true;
+                } else if (quantifier == '{') {
+                    required = next + 1 < regex.length() && regex.charAt(next + 1) != '0'
+                            && regex.charAt(next + 1) != ',';
+                    endsRun = true;
+                }
+            }
+
+            if (literal != null && required) {
+                run.append(literal.charValue());
+            }
+            if (endsRun || literal == null) {
+                best = longer(best, run);
+                run.setLength(0);
+            }
+            i = next;
+        }
+        best = longer(best, run);
+        return best;
+    }
+
+    // Index just past an escape like \d, \p{Lu}, \x41, \k<name> or \12
+    private static int escapeEnd(String regex, int start) {
+        char escaped = regex.charAt(start + 1);
+        int i = start + 2;
+        switch (escaped) {
+            case 'p':
+            case 'P':
+            case 'N':
+            case 'x':
+                if (i < regex.length() && regex.charAt(i) == '{') {
+                    int end = regex.indexOf('}', i);
+                    return end < 0 ? regex.length() : end + 1;
+                }
+                return escaped == 'x' ? Math.min(regex.length(), i + 2) : Math.min(regex.length(), i + 1);
+            case 'u':
+                return Math.min(regex.length(), i + 4);
+            case 'c':
+                return Math.min(regex.length(), i + 1);
+            case 'k': {
+                int end = regex.indexOf('>', i);
+                return end < 0 ? regex.length() : end + 1;
+            }
+            default:
+                if (Character.isDigit(escaped)) {
+                    // Octal escape or backreference, either way the digits that follow belong to it
+                    while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+                        i++;
+                    }
+                }
+                return i;
+        }
+    }
+
+    // (?i), (?x) and friends could make a literal case-insensitive or its whitespace meaningless
+    private static boolean hasInlineFlags(String regex) {
+        for (int i = regex.indexOf("(?"); i >= 0; i = regex.indexOf("(?", i + 2)) {
+            if (i + 2 < regex.length() && ":=!<>".indexOf(regex.charAt(i + 2)) < 0
+                    && (i == 0 || regex.charAt(i - 1) != '\\')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String longer(String best, StringBuilder run) {
+        if (run.length() > 0 && (best == null || run.length() > best.length())) {
+            return run.toString();
+        }
+        return best;
+    }
+
+    // Index just past the group starting at start, or -1 if it isn't closed
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                i = skipCharacterClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    // Index just past the character class starting at start, or -1 if it isn't closed
+    private static int skipCharacterClass(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                // A ] right after the opening bracket (or [^) is a literal
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+                    i++;
+                }
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+                    i++;
+                }
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+}
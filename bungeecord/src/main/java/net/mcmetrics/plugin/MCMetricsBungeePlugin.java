@@ -3,10 +3,12 @@ package net.mcmetrics.plugin;
 import net.mcmetrics.plugin.commands.MCMetricsCommand;
 import net.mcmetrics.plugin.listeners.PlayerSessionListener;
 import net.md_5.bungee.api.plugin.Plugin;
+import net.mcmetrics.shared.ApiSettings;
 import net.mcmetrics.shared.MCMetricsAPI;
 import net.mcmetrics.shared.config.ConfigManager;
 import net.mcmetrics.shared.models.ServerPing;
 import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.session.SessionManager;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 
 import java.io.IOException;
@@ -15,6 +17,8 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public final class MCMetricsBungeePlugin extends Plugin {
+    private static final long SHUTDOWN_TIMEOUT_MS = 30000;
+
     private MCMetricsAPI api;
     private SessionManager sessionManager;
     private ConfigManager configManager;
@@ -30,8 +34,8 @@ public final class MCMetricsBungeePlugin extends Plugin {
             return;
         }
 
+        sessionManager = new SessionManager();
         initializeAPI();
-        sessionManager = new SessionManager(api);
         getProxy().getPluginManager().registerListener(this, new PlayerSessionListener(this, sessionManager));
         getProxy().getPluginManager().registerCommand(this, new MCMetricsCommand(this));
         startServerPingTask();
@@ -48,11 +52,22 @@ public final class MCMetricsBungeePlugin extends Plugin {
             return;
         }
 
-        api = new MCMetricsAPI(serverId, serverKey, getLogger());
+        // The new instance takes over the old one's outbox, so the old one can send what it has left
+        // in the background instead of holding up the reload
+        MCMetricsAPI previous = api;
+        api = new MCMetricsAPI(serverId, serverKey, getLogger(),
+                ApiSettings.fromConfig(configManager, "main", getDataFolder(), getLogger()), previous);
+        api.setSessionManager(sessionManager);
+        if (previous != null) {
+            previous.shutdownInBackground();
+        }
     }
 
     @Override
     public void onDisable() {
+        // Sessions and the final flush share one deadline, so stopping never waits on the API for long
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+
         if (sessionManager != null) {
             List<Session> remainingSessions = sessionManager.endAllSessions();
             if (!remainingSessions.isEmpty()) {
@@ -62,11 +77,11 @@ public final class MCMetricsBungeePlugin extends Plugin {
                 Date endTime = new Date();
                 remainingSessions.forEach(session -> session.session_end = endTime);
 
-                // Upload sessions asynchronously in batches
+                // Upload sessions in bulk; whatever misses the deadline is sent on the next startup
                 if (api != null) {
                     try {
-                        api.insertSessionsBatch(remainingSessions, 5, 20) // 5 sessions per batch, 20 second timeout
-                                .get(25, TimeUnit.SECONDS); // Wait up to 25 seconds for all uploads to complete
+                        api.insertSessionsBatch(remainingSessions, 50, 20) // 50 sessions per request, 20 second deadline
+                                .get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
                         getLogger().info("Successfully uploaded all remaining sessions during shutdown");
                     } catch (Exception e) {
                         getLogger().warning("Failed to upload some sessions during shutdown: " + e.getMessage());
@@ -76,7 +91,7 @@ public final class MCMetricsBungeePlugin extends Plugin {
         }
 
         if (api != null) {
-            api.shutdown();
+            api.shutdown(Math.max(0, deadline - System.currentTimeMillis()));
         }
         getLogger().info("MCMetrics plugin disabled.");
     }
@@ -1,16 +1,18 @@
 package net.mcmetrics.plugin.commands;
 
 import net.mcmetrics.plugin.MCMetricsBungeePlugin;
-import net.mcmetrics.plugin.SessionManager;
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.chat.TextComponent;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.plugin.Command;
 import net.mcmetrics.shared.MCMetricsAPI;
+import net.mcmetrics.shared.metrics.EndpointLatency;
 import net.mcmetrics.shared.models.CustomEvent;
 import net.mcmetrics.shared.models.Payment;
 import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.pipeline.TrafficClass;
+import net.mcmetrics.shared.session.SessionManager;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -222,6 +224,42 @@ public class MCMetricsCommand extends Command {
         sender.sendMessage(new TextComponent(colorize("&7Active sessions: &f" + plugin.getActiveSessionCount())));
         sender.sendMessage(new TextComponent(colorize("&7API requests in the last hour: &f" + api.getRequestCount())));
         sender.sendMessage(new TextComponent(colorize("&7API errors in the last hour: &f" + api.getErrorCount())));
+        sender.sendMessage(new TextComponent(colorize("&7Circuit breaker: &f" + api.getCircuitState()
+                + " &7(tripped &f" + api.getCircuitTripCount() + "&7 times, held requests: &f"
+                + api.getHeldRequestCount() + "&7)")));
+        sender.sendMessage(new TextComponent(colorize("&7Connections reused/opened: &f"
+                + api.getConnectionPoolHits() + "/" + api.getConnectionPoolMisses())));
+        sender.sendMessage(new TextComponent(colorize("&7Events waiting to be batched: &f"
+                + api.getPendingEventCount())));
+        sender.sendMessage(new TextComponent(colorize("&7Events over the rate limits: &f"
+                + api.getSuppressedEventCount())));
+        sender.sendMessage(new TextComponent(colorize("&7Request queue: &f" + api.getQueuedRequestCount() + "/"
+                + api.getRequestQueueCapacity() + " &7(active workers: &f" + api.getActiveWorkerCount() + "&7)")));
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            sender.sendMessage(new TextComponent(colorize("&7  " + trafficClass + ": &f"
+                    + api.getQueuedRequestCount(trafficClass) + "/" + api.getRequestQueueCapacity(trafficClass)
+                    + " &7queued, &f" + api.getActiveWorkerCount(trafficClass) + "/"
+                    + api.getMaxWorkerCount(trafficClass) + " &7workers, &f"
+                    + api.getRejectedRequestCount(trafficClass) + " &7dropped")));
+        }
+        sender.sendMessage(new TextComponent(colorize("&7Retried requests: &f" + api.getRetriedRequestCount()
+                + " &7(waiting to retry: &f" + api.getWaitingRetryCount() + "&7)")));
+        sender.sendMessage(new TextComponent(colorize("&7Dropped requests: &f" + api.getRejectedRequestCount()
+                + " &7(kept in outbox: &f" + api.getSpilledRequestCount() + "&7)")));
+        sender.sendMessage(new TextComponent(colorize("&7Outbox: &f" + api.getOutboxSizeBytes() / 1024
+                + " KB &7on disk (re-sent: &f" + api.getReplayedEventCount() + "&7, not saved: &f"
+                + api.getUnsavedEventCount() + "&7)")));
+
+        Map<String, EndpointLatency> latencies = api.getEndpointLatencies();
+        sender.sendMessage(new TextComponent(colorize("&7Latency p50/p95/p99:"
+                + (latencies.isEmpty() ? " &fno requests yet" : ""))));
+        for (Map.Entry<String, EndpointLatency> entry : latencies.entrySet()) {
+            EndpointLatency latency = entry.getValue();
+            sender.sendMessage(new TextComponent(colorize("&7  " + entry.getKey() + ": &f"
+                    + latency.getTotal().formatPercentiles() + " &7(first byte &f"
+                    + latency.getTimeToFirstByte().formatPercentiles() + "&7, connect &f"
+                    + latency.getConnect().formatPercentiles() + "&7)")));
+        }
     }
 
     private void handleInfo(CommandSender sender, String[] args) {
@@ -260,9 +298,9 @@ public class MCMetricsCommand extends Command {
         sender.sendMessage(new TextComponent(colorize("&7Domain: &f" + session.domain)));
         sender.sendMessage(new TextComponent(colorize("&7IP Address: &f" + session.ip_address)));
 
-        Map<String, Integer> groupedEvents = sessionManager.getGroupedCustomEvents(playerId);
+        Map<String, Long> groupedEvents = sessionManager.getGroupedCustomEvents(playerId);
         sender.sendMessage(new TextComponent(colorize("&7Custom events this session:")));
-        for (Map.Entry<String, Integer> entry : groupedEvents.entrySet()) {
+        for (Map.Entry<String, Long> entry : groupedEvents.entrySet()) {
             sender.sendMessage(
                     new TextComponent(colorize("  &f" + entry.getKey() + ": &7" + entry.getValue() + " times")));
         }
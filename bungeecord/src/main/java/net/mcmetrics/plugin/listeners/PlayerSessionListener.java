@@ -1,7 +1,6 @@
 package net.mcmetrics.plugin.listeners;
 
 import net.mcmetrics.plugin.MCMetricsBungeePlugin;
-import net.mcmetrics.plugin.SessionManager;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.event.LoginEvent;
 import net.md_5.bungee.api.event.PlayerDisconnectEvent;
@@ -9,6 +8,7 @@ import net.md_5.bungee.api.event.PostLoginEvent;
 import net.md_5.bungee.api.plugin.Listener;
 import net.md_5.bungee.event.EventHandler;
 import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.session.SessionManager;
 
 import java.util.Date;
 import java.util.List;
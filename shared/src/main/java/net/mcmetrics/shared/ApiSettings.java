@@ -0,0 +1,152 @@
+package net.mcmetrics.shared;
+
+import net.mcmetrics.shared.config.ConfigManager;
+import net.mcmetrics.shared.pipeline.OverflowPolicy;
+import net.mcmetrics.shared.pipeline.TrafficClass;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Tuning options for {@link MCMetricsAPI}. The defaults are used for anything missing from config.yml.
+ */
+public class ApiSettings {
+    public String baseUrl = MCMetricsAPI.DEFAULT_BASE_URL;
+    public int maxWorkers = 4;
+    public int maxQueuedRequests = 1000;
+    public OverflowPolicy overflowPolicy = OverflowPolicy.DropByPriority;
+    // Per traffic class limits; classes that aren't set get a default share of the two above
+    public final Map<TrafficClass, Integer> trafficClassMaxWorkers = new EnumMap<>(TrafficClass.class);
+    public final Map<TrafficClass, Integer> trafficClassMaxQueued = new EnumMap<>(TrafficClass.class);
+    // Off until every API deployment has /insert/batch
+    public boolean batchingEnabled = false;
+    public int batchMaxEvents = 50;
+    public long batchMaxDelayMs = 2000;
+    // Chat goes out in bulk even without batching, falling back to one request per message
+    public boolean chatBufferEnabled = true;
+    public int chatBufferSize = 4096;
+    public int rollupIntervalSeconds = 60;
+    public int rollupMaxKeys = 8192;
+    public boolean rateLimitsEnabled = true;
+    public int rateLimitPlayerPerSecond = 5;
+    public int rateLimitPlayerBurst = 30;
+    public int rateLimitEventTypePerSecond = 200;
+    public int rateLimitEventTypeBurst = 1000;
+    public int retryMaxAttempts = 5;
+    public long retryBaseDelayMs = 1000;
+    public long retryMaxDelayMs = 60000;
+    public double retryBudgetRatio = 0.2;
+    public int circuitFailureThreshold = 5;
+    public int circuitFailureRatePercent = 50;
+    public int circuitMinimumRequests = 20;
+    public long circuitOpenDurationMs = 30000;
+    public int circuitMaxHeldRequests = 1000;
+    public boolean outboxEnabled = true;
+    public int outboxMaxSizeMb = 256;
+    public int outboxReplayPerSecond = 20;
+    public long outboxSyncIntervalMs = 1000;
+    public File dataFolder; // null disables everything that needs to write to disk
+
+    public static ApiSettings fromConfig(ConfigManager configManager, String configName, File dataFolder,
+            Logger logger) {
+        ApiSettings settings = new ApiSettings();
+        settings.dataFolder = dataFolder;
+        String baseUrl = configManager.getString(configName, "api.base-url", null);
+        if (baseUrl != null && !baseUrl.trim().isEmpty()) {
+            try {
+                URL url = new URL(baseUrl.trim());
+                if (!url.getProtocol().equals("http") && !url.getProtocol().equals("https")) {
+                    throw new MalformedURLException("unsupported protocol " + url.getProtocol());
+                }
+                // Without the trailing slash, endpoints are appended as "/insert/..."
+                settings.baseUrl = baseUrl.trim().replaceAll("/+$", "");
+            } catch (MalformedURLException e) {
+                logger.warning("Invalid api.base-url (" + e.getMessage() + "), using " + settings.baseUrl);
+            }
+        }
+        settings.maxWorkers = Math.max(1, configManager.getInt(configName, "api.max-workers", settings.maxWorkers));
+        settings.maxQueuedRequests = Math.max(1,
+                configManager.getInt(configName, "api.max-queued-requests", settings.maxQueuedRequests));
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            String path = "api.traffic-classes." + trafficClass.getConfigKey();
+            int maxWorkers = configManager.getInt(configName, path + ".max-workers", 0);
+            if (maxWorkers > 0) {
+                settings.trafficClassMaxWorkers.put(trafficClass, maxWorkers);
+            }
+            int maxQueued = configManager.getInt(configName, path + ".max-queued-requests", 0);
+            if (maxQueued > 0) {
+                settings.trafficClassMaxQueued.put(trafficClass, maxQueued);
+            }
+        }
+
+        settings.batchingEnabled = configManager.getBoolean(configName, "api.batching.enabled",
+                settings.batchingEnabled);
+        settings.batchMaxEvents = Math.max(1,
+                configManager.getInt(configName, "api.batching.max-events", settings.batchMaxEvents));
+        settings.batchMaxDelayMs = Math.max(10,
+                configManager.getInt(configName, "api.batching.max-delay-ms", (int) settings.batchMaxDelayMs));
+        settings.chatBufferEnabled = configManager.getBoolean(configName, "api.chat-buffer.enabled",
+                settings.chatBufferEnabled);
+        settings.chatBufferSize = Math.max(16,
+                configManager.getInt(configName, "api.chat-buffer.size", settings.chatBufferSize));
+
+        settings.rollupIntervalSeconds = Math.max(1, configManager.getInt(configName,
+                "api.rollups.interval-seconds", settings.rollupIntervalSeconds));
+        settings.rollupMaxKeys = Math.max(16,
+                configManager.getInt(configName, "api.rollups.max-keys", settings.rollupMaxKeys));
+
+        settings.rateLimitsEnabled = configManager.getBoolean(configName, "api.rate-limits.enabled",
+                settings.rateLimitsEnabled);
+        settings.rateLimitPlayerPerSecond = Math.max(1, configManager.getInt(configName,
+                "api.rate-limits.per-player.events-per-second", settings.rateLimitPlayerPerSecond));
+        settings.rateLimitPlayerBurst = Math.max(1, configManager.getInt(configName,
+                "api.rate-limits.per-player.burst", settings.rateLimitPlayerBurst));
+        settings.rateLimitEventTypePerSecond = Math.max(1, configManager.getInt(configName,
+                "api.rate-limits.per-event-type.events-per-second", settings.rateLimitEventTypePerSecond));
+        settings.rateLimitEventTypeBurst = Math.max(1, configManager.getInt(configName,
+                "api.rate-limits.per-event-type.burst", settings.rateLimitEventTypeBurst));
+
+        settings.retryMaxAttempts = Math.max(1,
+                configManager.getInt(configName, "api.retry.max-attempts", settings.retryMaxAttempts));
+        settings.retryBaseDelayMs = Math.max(10,
+                configManager.getInt(configName, "api.retry.base-delay-ms", (int) settings.retryBaseDelayMs));
+        settings.retryMaxDelayMs = Math.max(settings.retryBaseDelayMs,
+                configManager.getInt(configName, "api.retry.max-delay-ms", (int) settings.retryMaxDelayMs));
+        settings.retryBudgetRatio = Math.max(0, configManager.getInt(configName, "api.retry.budget-percent",
+                (int) (settings.retryBudgetRatio * 100)) / 100.0);
+
+        settings.circuitFailureThreshold = Math.max(1, configManager.getInt(configName,
+                "api.circuit-breaker.failure-threshold", settings.circuitFailureThreshold));
+        settings.circuitFailureRatePercent = Math.max(1, configManager.getInt(configName,
+                "api.circuit-breaker.failure-rate-percent", settings.circuitFailureRatePercent));
+        settings.circuitMinimumRequests = Math.max(1, configManager.getInt(configName,
+                "api.circuit-breaker.minimum-requests", settings.circuitMinimumRequests));
+        settings.circuitOpenDurationMs = Math.max(1000, configManager.getInt(configName,
+                "api.circuit-breaker.open-duration-ms", (int) settings.circuitOpenDurationMs));
+        settings.circuitMaxHeldRequests = Math.max(1, configManager.getInt(configName,
+                "api.circuit-breaker.max-held-requests", settings.circuitMaxHeldRequests));
+
+        settings.outboxEnabled = configManager.getBoolean(configName, "api.outbox.enabled", settings.outboxEnabled);
+        settings.outboxMaxSizeMb = Math.max(1,
+                configManager.getInt(configName, "api.outbox.max-size-mb", settings.outboxMaxSizeMb));
+        settings.outboxReplayPerSecond = Math.max(1,
+                configManager.getInt(configName, "api.outbox.replay-per-second", settings.outboxReplayPerSecond));
+        settings.outboxSyncIntervalMs = Math.max(10,
+                configManager.getInt(configName, "api.outbox.sync-interval-ms", (int) settings.outboxSyncIntervalMs));
+
+        String overflowPolicy = configManager.getString(configName, "api.overflow-policy", null);
+        if (overflowPolicy != null) {
+            try {
+                settings.overflowPolicy = OverflowPolicy.fromString(overflowPolicy);
+            } catch (IllegalArgumentException e) {
+                logger.warning(e.getMessage() + ", using " + settings.overflowPolicy);
+            }
+        }
+
+        return settings;
+    }
+}
@@ -1,32 +1,86 @@
 package net.mcmetrics.shared;
 
 import com.google.gson.*;
-import java.lang.reflect.Type;
+import net.mcmetrics.shared.json.UtcDateAdapter;
+import net.mcmetrics.shared.metrics.EndpointLatency;
+import net.mcmetrics.shared.metrics.SlidingWindowCounter;
 import net.mcmetrics.shared.models.*;
+import net.mcmetrics.shared.pipeline.AdmissionControl;
+import net.mcmetrics.shared.pipeline.BulkBuffer;
+import net.mcmetrics.shared.pipeline.EventBatcher;
+import net.mcmetrics.shared.pipeline.EventBatcher.BatchedEvent;
+import net.mcmetrics.shared.pipeline.Outbox;
+import net.mcmetrics.shared.pipeline.OutboxWriter;
+import net.mcmetrics.shared.pipeline.PrioritizedTask;
+import net.mcmetrics.shared.pipeline.RequestExecutor;
+import net.mcmetrics.shared.pipeline.RetryScheduler;
+import net.mcmetrics.shared.pipeline.RollupTable;
+import net.mcmetrics.shared.pipeline.TrafficClass;
+import net.mcmetrics.shared.session.SessionManager;
+import net.mcmetrics.shared.transport.CircuitBreaker;
+import net.mcmetrics.shared.transport.CircuitBreakerTransport;
+import net.mcmetrics.shared.transport.CircuitOpenException;
+import net.mcmetrics.shared.transport.HttpResponse;
+import net.mcmetrics.shared.transport.HttpTransport;
+import net.mcmetrics.shared.transport.JsonRequestBody;
+import net.mcmetrics.shared.transport.RequestBody;
 
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
-import java.time.Instant;
+import java.io.File;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 public class MCMetricsAPI {
-    private static final String API_BASE_URL = "https://ingest.services.mcmetrics.net/v1";
+    public static final String DEFAULT_BASE_URL = "https://ingest.services.mcmetrics.net/v1";
+    // Connections opened at startup so the first uploads skip the TLS handshake
+    private static final int WARM_CONNECTIONS = 2;
+    // Type of outbox records that hold a whole EventBatch, sent to /insert/batch as they are
+    private static final String BATCH_TYPE = "batch";
+    private static final String BATCH_ENDPOINT = "/insert/" + BATCH_TYPE;
+    private static final String SESSIONS_ENDPOINT = "/insert/sessions";
+    private static final String SESSION_ENDPOINT = "/insert/session";
+    private static final String CHAT_MESSAGE_TYPE = "chat_message";
+    private static final long SUPPRESSED_REPORT_SECONDS = 60;
+    // Rate-limited events are reported as rollups of this type, split by the type that was dropped
+    private static final String SUPPRESSED_EVENT_TYPE = "events_suppressed";
+    private static final String[] SUPPRESSED_NAMES = {"suppressed_event_type"};
+    private static final int SUPPRESSED_ROLLUP_KEYS = 1024;
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT_MS = 30000;
     private final Gson gson;
     private final String serverId;
     private final String serverKey;
     private final Logger logger;
-    private final ExecutorService executorService;
+    private final RequestExecutor requestExecutor;
+    private final RetryScheduler retryScheduler;
+    private final ScheduledExecutorService scheduler;
+    private final EventBatcher eventBatcher; // null when batching is disabled
+    private final BulkBuffer<ChatMessage> chatBuffer; // null when the chat buffer is disabled
+    private final AdmissionControl admissionControl; // null when rate limits are disabled
+    private final RollupTable rollups;
+    private final RollupTable suppressedRollups; // null when rate limits are disabled
+    private final int rollupIntervalSeconds;
+    private final Outbox outbox; // null when events are not saved to disk
+    private final OutboxWriter outboxWriter; // null when events are not saved to disk
+    private final HttpTransport transport;
+    private final CircuitBreaker circuitBreaker;
+    // Requests parked while the circuit breaker is open, released when it closes
+    private final Deque<PrioritizedTask> heldRequests = new ArrayDeque<>();
+    private final int maxHeldRequests;
+    private final int sessionUploadConcurrency;
+    private final Map<String, String> requestHeaders;
+    private volatile SessionManager sessionManager; // null until the plugin sets it
+    private volatile boolean batchEndpointMissing; // the API answered 404 or 405 on /insert/batch
+    private volatile boolean sessionsEndpointMissing; // likewise on /insert/sessions
+    private volatile boolean outboxHandedOver; // to the instance that replaced this one on a reload
 
-    private final AtomicInteger requestCount;
-    private final AtomicInteger errorCount;
-    private final Queue<Instant> requestTimes;
-    private final Queue<Instant> errorTimes;
+    private final SlidingWindowCounter requestCounter = SlidingWindowCounter.lastHour();
+    private final SlidingWindowCounter errorCounter = SlidingWindowCounter.lastHour();
+    private final Map<String, EndpointLatency> endpointLatencies = new ConcurrentHashMap<>();
 
     // Log rate limiting
     private final Map<String, LogInfo> logHistory = new ConcurrentHashMap<>();
@@ -38,31 +92,135 @@ public class MCMetricsAPI {
     }
 
     public MCMetricsAPI(String serverId, String serverKey, Logger logger) {
+        this(serverId, serverKey, logger, new ApiSettings());
+    }
+
+    public MCMetricsAPI(String serverId, String serverKey, Logger logger, ApiSettings settings) {
+        this(serverId, serverKey, logger, settings, HttpTransport.forBaseUrl(settings.baseUrl), null);
+    }
+
+    /**
+     * For reloads: takes over the outbox of the instance it replaces, if it uses the same directory,
+     * so that one can be shut down with {@link #shutdownInBackground} while this one is already in use.
+     */
+    public MCMetricsAPI(String serverId, String serverKey, Logger logger, ApiSettings settings,
+            MCMetricsAPI previous) {
+        this(serverId, serverKey, logger, settings, HttpTransport.forBaseUrl(settings.baseUrl), previous);
+    }
+
+    public MCMetricsAPI(String serverId, String serverKey, Logger logger, ApiSettings settings,
+            HttpTransport transport) {
+        this(serverId, serverKey, logger, settings, transport, null);
+    }
+
+    private MCMetricsAPI(String serverId, String serverKey, Logger logger, ApiSettings settings,
+            HttpTransport transport, MCMetricsAPI previous) {
         this.serverId = serverId;
         this.serverKey = serverKey;
         this.logger = logger;
 
         this.gson = new GsonBuilder()
-                .setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'")
-                .registerTypeAdapter(Date.class, new JsonSerializer<Date>() {
-                    // Convert to UTC if the server timezone is not UTC
-                    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-                    {
-                        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-                    }
-
-                    @Override
-                    public JsonElement serialize(Date src, Type typeOfSrc, JsonSerializationContext context) {
-                        return new JsonPrimitive(dateFormat.format(src));
-                    }
-                })
+                // Always UTC, whatever the server timezone is
+                .registerTypeAdapter(Date.class, new UtcDateAdapter())
                 .create();
 
-        this.executorService = Executors.newCachedThreadPool();
-        this.requestCount = new AtomicInteger(0);
-        this.errorCount = new AtomicInteger(0);
-        this.requestTimes = new ConcurrentLinkedQueue<>();
-        this.errorTimes = new ConcurrentLinkedQueue<>();
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("X-Server-ID", serverId);
+        headers.put("X-Server-Key", serverKey);
+        this.requestHeaders = Collections.unmodifiableMap(headers);
+
+        this.requestExecutor = new RequestExecutor(settings.maxWorkers, settings.maxQueuedRequests,
+                settings.overflowPolicy, settings.trafficClassMaxWorkers, settings.trafficClassMaxQueued);
+        this.circuitBreaker = new CircuitBreaker(settings.circuitFailureThreshold,
+                settings.circuitFailureRatePercent / 100.0, settings.circuitMinimumRequests,
+                settings.circuitOpenDurationMs);
+        this.transport = new CircuitBreakerTransport(transport, circuitBreaker);
+        this.maxHeldRequests = settings.circuitMaxHeldRequests;
+        this.sessionUploadConcurrency = settings.maxWorkers;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MCMetrics-Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryScheduler = new RetryScheduler(scheduler, requestExecutor::execute, settings.retryMaxAttempts,
+                settings.retryBaseDelayMs, settings.retryMaxDelayMs, settings.retryBudgetRatio);
+        circuitBreaker.setListener(this::onCircuitStateChange);
+        this.eventBatcher = settings.batchingEnabled
+                ? new EventBatcher(settings.batchMaxEvents, settings.batchMaxDelayMs, scheduler, this::sendBatch)
+                : null;
+        this.chatBuffer = settings.chatBufferEnabled
+                ? new BulkBuffer<>(settings.chatBufferSize, settings.batchMaxEvents, settings.batchMaxDelayMs,
+                        scheduler, this::sendChatMessages)
+                : null;
+        this.admissionControl = settings.rateLimitsEnabled
+                ? new AdmissionControl(settings.rateLimitPlayerPerSecond, settings.rateLimitPlayerBurst,
+                        settings.rateLimitEventTypePerSecond, settings.rateLimitEventTypeBurst)
+                : null;
+        if (admissionControl != null) {
+            scheduler.scheduleWithFixedDelay(this::reportSuppressedEvents, SUPPRESSED_REPORT_SECONDS,
+                    SUPPRESSED_REPORT_SECONDS, TimeUnit.SECONDS);
+        }
+        // A table of its own, so a spam wave can't push aggregated events out of theirs
+        this.suppressedRollups = admissionControl != null ? new RollupTable(SUPPRESSED_ROLLUP_KEYS) : null;
+        this.rollups = new RollupTable(settings.rollupMaxKeys);
+        this.rollupIntervalSeconds = settings.rollupIntervalSeconds;
+        scheduler.scheduleAtFixedRate(this::sendRollups, rollupIntervalSeconds, rollupIntervalSeconds,
+                TimeUnit.SECONDS);
+
+        Outbox handedOver = previous != null && settings.outboxEnabled && settings.dataFolder != null
+                ? previous.handOverOutbox(new File(settings.dataFolder, "outbox"))
+                : null;
+        this.outbox = handedOver != null
+                ? startOutbox(handedOver, settings)
+                : settings.outboxEnabled && settings.dataFolder != null
+                        ? openOutbox(new File(settings.dataFolder, "outbox"), settings)
+                        : null;
+        // Bounded like the request queue, beyond that the disk is too far behind to wait for
+        this.outboxWriter = outbox != null ? new OutboxWriter(settings.maxQueuedRequests) : null;
+
+        requestExecutor.execute(new BackgroundTask(TrafficClass.ServerPing,
+                () -> transport.warmUp(WARM_CONNECTIONS)));
+    }
+
+    private Outbox openOutbox(File directory, ApiSettings settings) {
+        try {
+            Outbox opened = new Outbox(directory, settings.outboxMaxSizeMb * 1024L * 1024L, this::logWithRateLimit);
+            if (opened.getSegmentCount() > 0) {
+                logger.info("Re-sending events saved during the last run (" + opened.getSizeBytes() / 1024
+                        + " KB on disk)");
+            }
+            return startOutbox(opened, settings);
+        } catch (IOException e) {
+            logger.warning("Failed to open the outbox, events will not be saved to disk: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Outbox startOutbox(Outbox outbox, ApiSettings settings) {
+        // Replay only tops up the request queue, so live traffic is never crowded out
+        outbox.start(scheduler, settings.outboxSyncIntervalMs, settings.outboxReplayPerSecond,
+                () -> circuitBreaker.getState() == CircuitBreaker.State.Closed
+                        && requestExecutor.getQueueDepth() < requestExecutor.getQueueCapacity() / 2,
+                record -> trackAcknowledgement(
+                        send(record.getTrafficClass(), record.getType(), record.getData(), true),
+                        record.getEntry()));
+        return outbox;
+    }
+
+    /**
+     * Stops this instance's outbox timers and gives the outbox to the instance replacing it, which
+     * keeps it open; requests still in flight here acknowledge their events in it as before. Null if
+     * there is no outbox in that directory to take over, the new instance then opens its own.
+     */
+    private synchronized Outbox handOverOutbox(File directory) {
+        if (outbox == null || outboxHandedOver || !outbox.getDirectory().getAbsoluteFile().equals(
+                directory.getAbsoluteFile())) {
+            return null;
+        }
+        outbox.stop();
+        outboxHandedOver = true;
+        return outbox;
     }
 
     // If there is a network error, to prevent the errors from spamming the console,
@@ -109,6 +267,15 @@ public class MCMetricsAPI {
                 case "CUSTOM_EVENT_UPLOAD_ERROR":
                     logger.warning("Custom event upload error: " + logMessage);
                     break;
+                case "QUEUE_FULL":
+                    logger.warning("MCMetrics request queue is full: " + logMessage);
+                    break;
+                case "OUTBOX_ERROR":
+                    logger.warning("MCMetrics outbox error: " + logMessage);
+                    break;
+                case "EVENTS_SUPPRESSED":
+                    logger.warning("Events over the MCMetrics rate limits were not sent: " + logMessage);
+                    break;
                 default:
                     logger.severe(logMessage);
                     break;
@@ -125,169 +292,734 @@ public class MCMetricsAPI {
     }
 
     public CompletableFuture<Void> insertServerPing(ServerPing serverPing) {
-        return makeRequest("POST", "/insert/server_ping", serverPing, EmptyResponse.class).thenApply(v -> null);
+        return insert(TrafficClass.ServerPing, "server_ping", serverPing);
     }
 
     public CompletableFuture<Void> insertSession(Session session) {
-        return makeRequest("POST", "/insert/session", session, EmptyResponse.class).thenApply(v -> null);
+        return insert(TrafficClass.Session, "session", session);
     }
 
     public CompletableFuture<Void> insertPayment(Payment payment) {
-        return makeRequest("POST", "/insert/payment", payment, EmptyResponse.class).thenApply(v -> null);
+        SessionManager sessions = sessionManager;
+        if (sessions != null && payment.player_uuid != null) {
+            sessions.addPayment(payment.player_uuid, payment);
+        }
+        return insert(TrafficClass.Payment, "payment", payment);
     }
 
+    /**
+     * Events and payments recorded through this instance are also added to the session of the
+     * player they belong to, whichever command, listener or plugin recorded them.
+     */
+    public void setSessionManager(SessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+    }
+
+    // Events over the rate limits complete right away without being sent, see AdmissionControl
     public CompletableFuture<Void> insertCustomEvent(CustomEvent customEvent) {
-        return makeRequest("POST", "/insert/custom_event", customEvent, EmptyResponse.class).thenApply(v -> null);
+        return insertCustomEvent(customEvent, true);
+    }
+
+    private CompletableFuture<Void> insertCustomEvent(CustomEvent customEvent, boolean addToSession) {
+        String eventType = customEvent.event_type != null ? customEvent.event_type : "custom_event";
+        if (!admit(customEvent.player_uuid, eventType)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        SessionManager sessions = sessionManager;
+        if (addToSession && sessions != null && customEvent.player_uuid != null) {
+            sessions.addCustomEvent(customEvent.player_uuid, customEvent);
+        }
+        return insert(TrafficClass.CustomEvent, "custom_event", customEvent);
     }
 
     public CompletableFuture<Void> insertChatMessage(ChatMessage chatMessage) {
-        return makeRequest("POST", "/insert/chat_message", chatMessage, EmptyResponse.class).thenApply(v -> null);
+        if (!admit(chatMessage.player_uuid, CHAT_MESSAGE_TYPE)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return insert(TrafficClass.ChatMessage, CHAT_MESSAGE_TYPE, chatMessage);
+    }
+
+    /**
+     * Queues a chat message to be uploaded in bulk with others. Unlike the insert methods there is
+     * nothing to wait for: during a chat flood messages beyond the buffer, or over the rate limits,
+     * are dropped and counted.
+     *
+     * @return false if the message was dropped
+     */
+    public boolean bufferChatMessage(ChatMessage chatMessage) {
+        if (chatBuffer == null) {
+            insertChatMessage(chatMessage);
+            return true;
+        }
+        return admit(chatMessage.player_uuid, CHAT_MESSAGE_TYPE) && chatBuffer.add(chatMessage);
+    }
+
+    /**
+     * Counts an occurrence of a custom event configured to be aggregated. Once per rollup interval,
+     * one custom event per player and combination of values is sent, with the values under their
+     * names and the number of occurrences under "count". If there are too many distinct keys to
+     * count, the occurrence is sent on its own instead.
+     *
+     * @param names  metadata keys the counts are split by, the same array for every call of an event
+     * @param values their values for this occurrence; kept, so it must be a fresh array
+     */
+    public void countCustomEvent(UUID player, String eventType, String[] names, Object[] values) {
+        SessionManager sessions = sessionManager;
+        if (sessions != null && player != null) {
+            sessions.countCustomEvent(player, eventType);
+        }
+        if (rollups.increment(player, eventType, names, values)) {
+            return;
+        }
+        CustomEvent customEvent = new CustomEvent();
+        customEvent.player_uuid = player;
+        customEvent.event_type = eventType;
+        customEvent.timestamp = new Date();
+        customEvent.metadata = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            customEvent.metadata.put(names[i], values[i]);
+        }
+        // Already counted in the session above
+        insertCustomEvent(customEvent, false).exceptionally(e -> {
+            logWithRateLimit("CUSTOM_EVENT_UPLOAD_ERROR", "Failed to record custom event " + eventType + ": "
+                    + e.getMessage());
+            return null;
+        });
+    }
+
+    // Rollups are already one event per key and interval, so they skip the rate limits
+    private void sendRollups() {
+        Date now = new Date();
+        rollups.rotate((key, count) -> sendRollup(key, count, now));
+        if (suppressedRollups != null) {
+            suppressedRollups.rotate((key, count) -> sendRollup(key, count, now));
+        }
+    }
+
+    private void sendRollup(RollupTable.Key key, long count, Date now) {
+        CustomEvent rollup = new CustomEvent();
+        rollup.player_uuid = key.getPlayer();
+        rollup.event_type = key.getEventType();
+        rollup.timestamp = now;
+        rollup.metadata = new HashMap<>();
+        for (int i = 0; i < key.getNames().length; i++) {
+            rollup.metadata.put(key.getNames()[i], key.getValues()[i]);
+        }
+        rollup.metadata.put("count", count);
+        rollup.metadata.put("interval_seconds", rollupIntervalSeconds);
+        try {
+            insert(TrafficClass.CustomEvent, "custom_event", rollup).exceptionally(e -> {
+                logWithRateLimit("CUSTOM_EVENT_UPLOAD_ERROR", "Failed to record rollup of custom event "
+                        + key.getEventType() + ": " + e.getMessage());
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // An exception would cancel the timer, and with it every later rollup
+            logWithRateLimit("CUSTOM_EVENT_UPLOAD_ERROR", "Failed to record rollup of custom event "
+                    + key.getEventType() + ": " + e.getMessage());
+        }
+    }
+
+    private boolean admit(UUID player, String eventType) {
+        if (admissionControl == null || admissionControl.tryAdmit(player, eventType)) {
+            return true;
+        }
+        // Counted per player and type and sent with the rollups, so the dashboard can tell a rate-limited
+        // player from a quiet one. Beyond the table's keys they are only counted locally.
+        suppressedRollups.increment(player, SUPPRESSED_EVENT_TYPE, SUPPRESSED_NAMES, new Object[] {eventType});
+        return false;
+    }
+
+    // One line a minute instead of one per suppressed event
+    private void reportSuppressedEvents() {
+        Map<String, Long> recent = admissionControl.takeRecentlySuppressed();
+        if (recent.isEmpty()) {
+            return;
+        }
+        long total = 0;
+        StringBuilder perType = new StringBuilder();
+        for (Map.Entry<String, Long> entry : recent.entrySet()) {
+            total += entry.getValue();
+            perType.append(perType.length() == 0 ? "" : ", ").append(entry.getKey()).append(": ")
+                    .append(entry.getValue());
+        }
+        logWithRateLimit("EVENTS_SUPPRESSED", "suppressed " + total + " events in the last "
+                + SUPPRESSED_REPORT_SECONDS + " seconds (" + perType + ")");
+    }
+
+    // Ships one bulk of buffered chat messages, saved to the outbox as a single record
+    private void sendChatMessages(List<ChatMessage> messages) {
+        EventBatch batch = new EventBatch();
+        batch.events = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            batch.events.add(new EventBatch.Entry(CHAT_MESSAGE_TYPE, message));
+        }
+
+        insert(TrafficClass.ChatMessage, BATCH_TYPE, batch).exceptionally(e -> {
+            logWithRateLimit("CHAT_UPLOAD_ERROR", "Failed to upload " + messages.size() + " chat messages: "
+                    + e.getMessage());
+            return null;
+        });
+    }
+
+    private CompletableFuture<Void> insert(TrafficClass trafficClass, String type, Object data) {
+        if (outbox == null) {
+            return send(trafficClass, type, data, false);
+        }
+
+        // Serialized here, so the caller may change or reuse its object as soon as this returns. The
+        // write itself is left to the outbox writer: callers are often on the server's main thread,
+        // where disk latency would become tick latency. Records are only fsynced on a timer anyway,
+        // so this doesn't make them any less durable.
+        JsonElement json = gson.toJsonTree(data);
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (!outboxWriter.submit(() -> persistAndSend(trafficClass, type, json, result))) {
+            // The disk is too far behind, or shutting down; sent unsaved, under the request queue's
+            // overflow policy like any other request
+            return send(trafficClass, type, json, false);
+        }
+        return result;
+    }
+
+    // Saved before anything else happens, so the event survives a crash or an API outage
+    private void persistAndSend(TrafficClass trafficClass, String type, JsonElement json,
+            CompletableFuture<Void> result) {
+        try {
+            Outbox.Entry entry = outbox.append(trafficClass, type, json);
+            CompletableFuture<Void> request = send(trafficClass, type, json, entry != null);
+            if (entry != null) {
+                trackAcknowledgement(request, entry);
+            }
+            request.whenComplete((v, error) -> complete(result, error));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private CompletableFuture<Void> send(TrafficClass trafficClass, String type, Object data, boolean durable) {
+        // Bulks of chat messages, also when replayed from the outbox, are already a batch
+        if (BATCH_TYPE.equals(type)) {
+            return sendBulk(trafficClass, data, durable);
+        }
+        if (eventBatcher != null) {
+            return eventBatcher.add(trafficClass, type, data, durable);
+        }
+        return makeRequest(trafficClass, "POST", "/insert/" + type, data, EmptyResponse.class, durable)
+                .thenApply(v -> null);
+    }
+
+    private CompletableFuture<Void> sendBulk(TrafficClass trafficClass, Object batch, boolean durable) {
+        if (batchEndpointMissing) {
+            return sendSeparately(trafficClass, batch, durable);
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        makeRequest(trafficClass, "POST", BATCH_ENDPOINT, batch, EmptyResponse.class, durable)
+                .whenComplete((response, error) -> {
+                    if (error != null && isMissingEndpoint(error)) {
+                        onBatchEndpointMissing();
+                        sendSeparately(trafficClass, batch, durable).whenComplete((v, e) -> complete(result, e));
+                    } else {
+                        complete(result, error);
+                    }
+                });
+        return result;
+    }
+
+    // One request per event of a bulk, for an API without the batch endpoint
+    private CompletableFuture<Void> sendSeparately(TrafficClass trafficClass, Object batch, boolean durable) {
+        JsonElement json = batch instanceof JsonElement ? (JsonElement) batch : gson.toJsonTree(batch);
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        sendSeparately(trafficClass, json.getAsJsonObject().getAsJsonArray("events"), 0, durable, null, result);
+        return result;
+    }
+
+    // One at a time, so a bulk can't fill up its class's queue; fails with the first error once all were tried
+    private void sendSeparately(TrafficClass trafficClass, JsonArray events, int index, boolean durable,
+            Throwable firstError, CompletableFuture<Void> result) {
+        if (index == events.size()) {
+            complete(result, firstError);
+            return;
+        }
+        JsonObject event = events.get(index).getAsJsonObject();
+        makeRequest(trafficClass, "POST", "/insert/" + event.get("type").getAsString(), event.get("data"),
+                EmptyResponse.class, durable)
+                .whenComplete((response, error) -> sendSeparately(trafficClass, events, index + 1, durable,
+                        firstError != null ? firstError : error, result));
+    }
+
+    private void onBatchEndpointMissing() {
+        if (!batchEndpointMissing) {
+            batchEndpointMissing = true;
+            logger.warning("The MCMetrics API has no " + BATCH_ENDPOINT + " endpoint, sending events one by one. "
+                    + "Disable api.batching and api.chat-buffer to stop trying.");
+        }
+    }
+
+    // Bulk endpoints are newer than the per-type ones, an API without them answers 404 or 405
+    private static boolean isMissingEndpoint(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof MCMetricsException && (((MCMetricsException) error).getStatusCode() == 404
+                || ((MCMetricsException) error).getStatusCode() == 405);
+    }
+
+    private static void complete(CompletableFuture<Void> future, Throwable error) {
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(null);
+        }
+    }
+
+    private CompletableFuture<Void> trackAcknowledgement(CompletableFuture<Void> future, Outbox.Entry entry) {
+        future.whenComplete((v, error) -> {
+            if (shouldAcknowledge(error)) {
+                entry.acknowledge();
+            }
+        });
+        return future;
+    }
+
+    // An event leaves the outbox once the API has it, or once retrying can't help. A missing endpoint
+    // isn't the event's fault, it is kept for an API that has the endpoint
+    private static boolean shouldAcknowledge(Throwable error) {
+        return error == null || (!isRetryable(error) && !isMissingEndpoint(error));
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return !(error instanceof MCMetricsException) || ((MCMetricsException) error).isRetryable();
+    }
+
+    // Sends a group of events collected by the batcher as one request
+    private void sendBatch(List<BatchedEvent> events) {
+        if (events.size() == 1 || batchEndpointMissing) {
+            events.forEach(this::sendBatchedEvent);
+            return;
+        }
+
+        // The batch is only as expendable as its most important event
+        TrafficClass trafficClass = events.get(0).getTrafficClass();
+        boolean durable = true;
+        EventBatch batch = new EventBatch();
+        batch.events = new ArrayList<>(events.size());
+        for (BatchedEvent event : events) {
+            batch.events.add(new EventBatch.Entry(event.getType(), event.getData()));
+            if (trafficClass.isLessImportantThan(event.getTrafficClass())) {
+                trafficClass = event.getTrafficClass();
+            }
+            durable &= event.isDurable();
+        }
+
+        makeRequest(trafficClass, "POST", BATCH_ENDPOINT, batch, EmptyResponse.class, durable)
+                .whenComplete((response, error) -> {
+                    if (error != null && isMissingEndpoint(error)) {
+                        // Nothing was accepted, so each event gets its own request and its own outcome
+                        onBatchEndpointMissing();
+                        events.forEach(this::sendBatchedEvent);
+                        return;
+                    }
+                    for (BatchedEvent event : events) {
+                        complete(event.getFuture(), error);
+                    }
+                });
+    }
+
+    private void sendBatchedEvent(BatchedEvent event) {
+        makeRequest(event.getTrafficClass(), "POST", "/insert/" + event.getType(), event.getData(),
+                EmptyResponse.class, event.isDurable())
+                .whenComplete((response, error) -> complete(event.getFuture(), error));
     }
 
     public CompletableFuture<List<ABTest>> getABTests() {
-        return makeRequest("GET", "/ab_tests", null, ABTestResponse.class)
-                .thenApply(response -> ((ABTestResponse) response).data.ab_tests);
+        return makeRequest(TrafficClass.ABTest, "GET", "/ab_tests", null, ABTestResponse.class, false)
+                .thenApply(response -> response.data.ab_tests);
     }
 
     public CompletableFuture<Void> insertSessionsBatch(List<Session> sessions) {
-        return insertSessionsBatch(sessions, 10, 30); // Default: 10 sessions per batch, 30 second timeout
+        return insertSessionsBatch(sessions, 50, 30); // Default: 50 sessions per request, 30 second deadline
     }
 
+    /**
+     * Uploads sessions through the bulk endpoint, one request per chunk of {@code batchSize} sessions,
+     * with a few chunks in flight at once. No new chunk is started when it couldn't finish before the
+     * deadline. Sessions that aren't uploaded by then stay in the outbox and are sent on the next start.
+     */
     public CompletableFuture<Void> insertSessionsBatch(List<Session> sessions, int batchSize, int timeoutSeconds) {
         if (sessions == null || sessions.isEmpty()) {
             return CompletableFuture.completedFuture(null);
         }
 
-        logger.info("Starting batch upload of " + sessions.size() + " sessions (batch size: " + batchSize + ")");
+        SessionUpload upload = new SessionUpload(sessions, Math.max(1, batchSize),
+                System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds));
+        upload.start();
+        return upload.result;
+    }
 
-        CompletableFuture<Void> result = new CompletableFuture<>();
+    private class SessionUpload {
+        private final int total;
+        private final long deadline;
+        private final Deque<SessionChunk> pending = new ArrayDeque<>();
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private int inFlight;
+        private int uploaded;
+        private ScheduledFuture<?> deadlineTask;
 
-        executorService.submit(() -> {
+        SessionUpload(List<Session> sessions, int batchSize, long deadline) {
+            this.total = sessions.size();
+            this.deadline = deadline;
+
+            for (int i = 0; i < sessions.size(); i += batchSize) {
+                List<Session> chunk = new ArrayList<>(sessions.subList(i, Math.min(i + batchSize, sessions.size())));
+                // One per session, null where it couldn't be saved
+                List<Outbox.Entry> entries = new ArrayList<>(chunk.size());
+                for (Session session : chunk) {
+                    // Saved up front, so whatever misses the deadline is already on disk
+                    entries.add(outbox != null
+                            ? outbox.append(TrafficClass.Session, "session", gson.toJsonTree(session))
+                            : null);
+                }
+                pending.add(new SessionChunk(chunk, entries));
+            }
+        }
+
+        void start() {
+            logger.info("Uploading " + total + " sessions in " + pending.size() + " requests");
             try {
-                List<CompletableFuture<Void>> batchFutures = new ArrayList<>();
-
-                // Split sessions into batches
-                for (int i = 0; i < sessions.size(); i += batchSize) {
-                    int endIndex = Math.min(i + batchSize, sessions.size());
-                    List<Session> batch = sessions.subList(i, endIndex);
-
-                    // Process each session in the batch
-                    List<CompletableFuture<Void>> sessionFutures = batch.stream()
-                            .map(this::insertSession)
-                            .collect(java.util.stream.Collectors.toList());
-
-                    // Combine all futures in this batch
-                    CompletableFuture<Void> batchFuture = CompletableFuture.allOf(
-                            sessionFutures.toArray(new CompletableFuture[0]));
-
-                    batchFutures.add(batchFuture);
-
-                    // Add a small delay between batches to prevent overwhelming the server
-                    if (endIndex < sessions.size()) {
-                        try {
-                            Thread.sleep(1000); // 1 second delay between batches
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                            break;
+                deadlineTask = scheduler.schedule(this::finish, Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // Shutting down; the upload still ends once every chunk has been tried
+            }
+            launch();
+        }
+
+        private synchronized void launch() {
+            // A chunk that can't make it before the deadline is better left in the outbox
+            long expected = expectedLatencyMillis(sessionsEndpointMissing ? SESSION_ENDPOINT : SESSIONS_ENDPOINT,
+                    1000);
+            while (inFlight < sessionUploadConcurrency && !pending.isEmpty()
+                    && System.currentTimeMillis() + expected < deadline) {
+                SessionChunk chunk = pending.poll();
+                inFlight++;
+                upload(chunk).whenComplete((accepted, error) -> onChunkDone(chunk, accepted, error));
+            }
+
+            if (inFlight == 0) {
+                finish();
+            }
+        }
+
+        // Completes with the number of sessions the API accepted
+        private CompletableFuture<Integer> upload(SessionChunk chunk) {
+            if (sessionsEndpointMissing) {
+                return uploadSeparately(chunk);
+            }
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            makeRequest(TrafficClass.Session, "POST", SESSIONS_ENDPOINT, new SessionBatch(chunk.sessions),
+                    EmptyResponse.class, !chunk.entries.contains(null))
+                    .whenComplete((response, error) -> {
+                        if (error != null && isMissingEndpoint(error)) {
+                            onSessionsEndpointMissing();
+                            uploadSeparately(chunk).whenComplete((accepted, e) -> {
+                                if (e != null) {
+                                    result.completeExceptionally(e);
+                                } else {
+                                    result.complete(accepted);
+                                }
+                            });
+                            return;
                         }
-                    }
+                        if (shouldAcknowledge(error)) {
+                            chunk.entries.stream().filter(Objects::nonNull).forEach(Outbox.Entry::acknowledge);
+                        }
+                        if (error != null) {
+                            result.completeExceptionally(error);
+                        } else {
+                            result.complete(chunk.sessions.size());
+                        }
+                    });
+            return result;
+        }
+
+        // One request per session, for an API without the bulk endpoint
+        private CompletableFuture<Integer> uploadSeparately(SessionChunk chunk) {
+            AtomicInteger accepted = new AtomicInteger();
+            CompletableFuture<?>[] requests = new CompletableFuture<?>[chunk.sessions.size()];
+            for (int i = 0; i < requests.length; i++) {
+                Outbox.Entry entry = chunk.entries.get(i);
+                requests[i] = makeRequest(TrafficClass.Session, "POST", SESSION_ENDPOINT, chunk.sessions.get(i),
+                        EmptyResponse.class, entry != null)
+                        .whenComplete((response, error) -> {
+                            if (entry != null && shouldAcknowledge(error)) {
+                                entry.acknowledge();
+                            }
+                            if (error == null) {
+                                accepted.incrementAndGet();
+                            }
+                        });
+            }
+            return CompletableFuture.allOf(requests).handle((v, error) -> {
+                if (accepted.get() == 0 && error != null) {
+                    throw error instanceof CompletionException ? (CompletionException) error
+                            : new CompletionException(error);
                 }
+                return accepted.get();
+            });
+        }
 
-                // Wait for all batches to complete with timeout
-                CompletableFuture<Void> allBatches = CompletableFuture.allOf(
-                        batchFutures.toArray(new CompletableFuture[0]));
+        private void onChunkDone(SessionChunk chunk, Integer accepted, Throwable error) {
+            int failed = error != null ? chunk.sessions.size() : chunk.sessions.size() - accepted;
+            if (failed > 0) {
+                logWithRateLimit("SESSION_UPLOAD_ERROR", "Failed to upload " + failed + " sessions"
+                        + (error != null ? ": " + error.getMessage() : ""));
+            }
 
-                try {
-                    allBatches.get(timeoutSeconds, TimeUnit.SECONDS);
-                    logger.info("Successfully uploaded all " + sessions.size() + " sessions");
-                    result.complete(null);
-                } catch (Exception e) {
-                    logWithRateLimit("BATCH_UPLOAD_ERROR",
-                            "Batch session upload failed or timed out: " + e.getMessage());
-                    result.completeExceptionally(new MCMetricsException("Batch upload failed: " + e.getMessage()));
-                }
+            synchronized (this) {
+                inFlight--;
+                uploaded += chunk.sessions.size() - failed;
+                launch();
+            }
+        }
 
-            } catch (Exception e) {
-                logWithRateLimit("BATCH_UPLOAD_ERROR", "Error during batch session upload: " + e.getMessage());
-                result.completeExceptionally(new MCMetricsException("Batch upload error: " + e.getMessage()));
+        private synchronized void finish() {
+            if (result.isDone()) {
+                return;
+            }
+            if (deadlineTask != null) {
+                deadlineTask.cancel(false);
             }
-        });
 
-        return result;
+            if (uploaded == total) {
+                logger.info("Successfully uploaded all " + total + " sessions");
+                result.complete(null);
+                return;
+            }
+
+            String message = "Uploaded " + uploaded + " of " + total + " sessions"
+                    + (outbox != null ? ", the rest are saved to disk and will be sent on the next startup" : "");
+            logWithRateLimit("BATCH_UPLOAD_ERROR", message);
+            result.completeExceptionally(new MCMetricsException(message));
+        }
+    }
+
+    private void onSessionsEndpointMissing() {
+        if (!sessionsEndpointMissing) {
+            sessionsEndpointMissing = true;
+            logger.warning("The MCMetrics API has no " + SESSIONS_ENDPOINT + " endpoint, uploading sessions one by one");
+        }
+    }
+
+    private static class SessionChunk {
+        final List<Session> sessions;
+        final List<Outbox.Entry> entries; // one per session, null where it isn't saved
+
+        SessionChunk(List<Session> sessions, List<Outbox.Entry> entries) {
+            this.sessions = sessions;
+            this.entries = entries;
+        }
     }
 
-    private <T, R> CompletableFuture<R> makeRequest(String method, String endpoint, T data, Class<R> responseClass) {
+    // p95 latency of an endpoint so far, or the given default before it has been used
+    private long expectedLatencyMillis(String endpoint, long defaultMillis) {
+        EndpointLatency latency = endpointLatencies.get(endpoint);
+        if (latency == null || latency.getTotal().getCount() == 0) {
+            return defaultMillis;
+        }
+        return (long) latency.getTotal().getPercentileMillis(95);
+    }
+
+    private <T, R> CompletableFuture<R> makeRequest(TrafficClass trafficClass, String method, String endpoint,
+            T data, Class<R> responseClass, boolean durable) {
         CompletableFuture<R> future = new CompletableFuture<>();
+        RequestTask<T, R> task = new RequestTask<>(trafficClass, method, endpoint, data, responseClass, durable,
+                future);
+        if (circuitBreaker.isAcceptingRequests()) {
+            retryScheduler.submit(endpoint, task);
+        } else {
+            holdRequest(task);
+        }
+        return future;
+    }
 
-        executorService.submit(() -> {
-            HttpURLConnection connection = null;
-            try {
-                incrementRequestCount();
-                URL url = new URL(API_BASE_URL + endpoint);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod(method);
-                connection.setConnectTimeout(45000);
-                connection.setReadTimeout(45000);
-
-                connection.setRequestProperty("Content-Type", "application/json");
-                connection.setRequestProperty("X-Server-ID", serverId);
-                connection.setRequestProperty("X-Server-Key", serverKey);
-
-                if (method.equals("POST") && data != null) {
-                    connection.setDoOutput(true);
-                    String json = gson.toJson(data);
-                    try (OutputStream os = connection.getOutputStream()) {
-                        byte[] input = json.getBytes(StandardCharsets.UTF_8);
-                        os.write(input, 0, input.length);
-                    }
+    // Parks a request until the circuit breaker closes, instead of attempting it against a dead API
+    private void holdRequest(PrioritizedTask task) {
+        PrioritizedTask dropped = null;
+        synchronized (heldRequests) {
+            if (circuitBreaker.getState() == CircuitBreaker.State.Closed) {
+                // Closed while this request was on its way here
+                requestExecutor.execute(task);
+                return;
+            }
+            heldRequests.add(task);
+            if (heldRequests.size() > maxHeldRequests) {
+                dropped = heldRequests.poll();
+            }
+        }
+        if (dropped != null) {
+            dropped.reject("MCMetrics API is unreachable and the local buffer is full, dropped the oldest request");
+        }
+    }
+
+    private void onCircuitStateChange(CircuitBreaker.State state) {
+        switch (state) {
+            case Open:
+                logger.warning("MCMetrics API looks unreachable, pausing uploads for "
+                        + circuitBreaker.getOpenDurationMs() / 1000 + " seconds");
+                try {
+                    scheduler.schedule(this::sendProbe, circuitBreaker.getOpenDurationMs(), TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ignored) {
+                    // Shutting down
+                }
+                break;
+            case Closed:
+                List<PrioritizedTask> released;
+                synchronized (heldRequests) {
+                    released = new ArrayList<>(heldRequests);
+                    heldRequests.clear();
+                }
+                logger.info("MCMetrics API is reachable again, sending " + released.size() + " held requests");
+                for (PrioritizedTask task : released) {
+                    requestExecutor.execute(task);
                 }
+                break;
+            default:
+                break;
+        }
+    }
 
-                int responseCode = connection.getResponseCode();
-                String responseBody;
+    // Sends one held request once the open period is over; the transport lets it through as the probe
+    private void sendProbe() {
+        PrioritizedTask probe;
+        synchronized (heldRequests) {
+            probe = heldRequests.poll();
+        }
+        if (probe != null) {
+            requestExecutor.execute(probe);
+        }
+    }
 
-                if (responseCode >= 200 && responseCode < 300) {
-                    responseBody = readInputStream(connection.getInputStream());
-                } else {
-                    responseBody = readInputStream(connection.getErrorStream());
-                }
+    private <T, R> void executeRequest(RequestTask<T, R> task) {
 
-                handleResponse(responseCode, responseBody, responseClass, future);
-            } catch (Exception e) {
-                incrementErrorCount();
-                logWithRateLimit("NETWORK_ERROR", e.getMessage());
-                future.completeExceptionally(new MCMetricsException("Network error: " + e.getMessage()));
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
+        // Serialized by the transport straight into its buffer (or the socket), not into a String first
+        RequestBody body = task.method.equals("POST") && task.data != null
+                ? new JsonRequestBody(gson, task.data)
+                : null;
+
+        HttpResponse response;
+        long startNanos = System.nanoTime();
+        try {
+            response = transport.execute(task.method, task.endpoint, requestHeaders, body,
+                    task.responseClass == EmptyResponse.class);
+        } catch (CircuitOpenException e) {
+            // Never attempted, so it doesn't count as a request or use up a retry
+            holdRequest(task);
+            return;
+        } catch (Exception e) {
+            incrementRequestCount();
+            task.attempt++;
+            incrementErrorCount();
+            logWithRateLimit("NETWORK_ERROR", e.getMessage());
+            if (!retryScheduler.retry(task.endpoint, task, task.attempt, -1)) {
+                task.future.completeExceptionally(new MCMetricsException("Network error: " + e.getMessage()));
             }
-        });
+            return;
+        }
 
-        return future;
+        incrementRequestCount();
+        task.attempt++;
+        endpointLatencies.computeIfAbsent(task.endpoint, endpoint -> new EndpointLatency()).record(
+                response.getConnectNanos(), response.getTimeToFirstByteNanos(),
+                response.getTotalNanos() >= 0 ? response.getTotalNanos() : System.nanoTime() - startNanos);
+        handleResponse(task, response);
     }
 
-    private String readInputStream(InputStream inputStream) throws IOException {
-        if (inputStream == null)
-            return "";
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+    // Retry-After in milliseconds, either as delay-seconds or as an HTTP date; -1 if absent or unreadable
+    private static long parseRetryAfter(HttpResponse response) {
+        String value = response.getHeader("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            try {
+                return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli()
+                        - System.currentTimeMillis();
+            } catch (DateTimeParseException ignored) {
+                return -1;
             }
-            return response.toString();
         }
     }
 
-    private <R> void handleResponse(int statusCode, String responseStr, Class<R> responseClass,
-            CompletableFuture<R> future) {
-        if (statusCode >= 200 && statusCode < 300) {
-            if (responseClass == EmptyResponse.class) {
+    private class RequestTask<T, R> extends PrioritizedTask {
+        private final String method;
+        private final String endpoint;
+        private final T data;
+        private final Class<R> responseClass;
+        private final boolean durable;
+        private final CompletableFuture<R> future;
+        private int attempt; // only touched by the worker running the task
+
+        RequestTask(TrafficClass trafficClass, String method, String endpoint, T data, Class<R> responseClass,
+                boolean durable, CompletableFuture<R> future) {
+            super(trafficClass);
+            this.method = method;
+            this.endpoint = endpoint;
+            this.data = data;
+            this.responseClass = responseClass;
+            this.durable = durable;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            executeRequest(this);
+        }
+
+        @Override
+        public void reject(String reason) {
+            logWithRateLimit("QUEUE_FULL", reason);
+            future.completeExceptionally(new MCMetricsException(reason));
+        }
+
+        @Override
+        public boolean isDurable() {
+            return durable;
+        }
+    }
+
+    private static class BackgroundTask extends PrioritizedTask {
+        private final Runnable runnable;
+
+        BackgroundTask(TrafficClass trafficClass, Runnable runnable) {
+            super(trafficClass);
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public void reject(String reason) {
+            // Nothing waits on background work
+        }
+    }
+
+    private <T, R> void handleResponse(RequestTask<T, R> task, HttpResponse response) {
+        CompletableFuture<R> future = task.future;
+        if (response.isSuccessful()) {
+            if (task.responseClass == EmptyResponse.class) {
                 future.complete(null);
             } else {
                 try {
-                    R result = gson.fromJson(responseStr, responseClass);
+                    R result = gson.fromJson(response.getBodyAsString(), task.responseClass);
                     future.complete(result);
                 } catch (Exception e) {
                     logWithRateLimit("PARSE_ERROR", "Failed to parse response: " + e.getMessage());
@@ -296,12 +1028,15 @@ public class MCMetricsAPI {
             }
         } else {
             incrementErrorCount();
-            MCMetricsException exception = parseErrorResponse(responseStr);
-            future.completeExceptionally(exception);
+            MCMetricsException exception = parseErrorResponse(response.getStatusCode(), response.getBodyAsString());
+            if (!exception.isRetryable()
+                    || !retryScheduler.retry(task.endpoint, task, task.attempt, parseRetryAfter(response))) {
+                future.completeExceptionally(exception);
+            }
         }
     }
 
-    private MCMetricsException parseErrorResponse(String errorBody) {
+    private MCMetricsException parseErrorResponse(int statusCode, String errorBody) {
         try {
             JsonObject jsonObject = JsonParser.parseString(errorBody).getAsJsonObject();
             String error = jsonObject.get("error").getAsString();
@@ -314,40 +1049,159 @@ public class MCMetricsAPI {
             }
 
             logWithRateLimit(errorType, error);
-            return new MCMetricsException(error);
+            return new MCMetricsException(error, statusCode);
         } catch (Exception e) {
             logWithRateLimit("PARSE_ERROR", "Failed to parse error response: " + errorBody);
-            return new MCMetricsException("Failed to parse error response: " + errorBody);
+            return new MCMetricsException("Failed to parse error response: " + errorBody, statusCode);
         }
     }
 
     private void incrementRequestCount() {
-        requestCount.incrementAndGet();
-        requestTimes.add(Instant.now());
-        cleanupOldEntries(requestTimes);
+        requestCounter.increment();
     }
 
     private void incrementErrorCount() {
-        errorCount.incrementAndGet();
-        errorTimes.add(Instant.now());
-        cleanupOldEntries(errorTimes);
+        errorCounter.increment();
+    }
+
+    // Requests in the last hour
+    public int getRequestCount() {
+        return (int) requestCounter.getCount();
+    }
+
+    // Failed requests in the last hour
+    public int getErrorCount() {
+        return (int) errorCounter.getCount();
+    }
+
+    // Latency percentiles per endpoint since startup, sorted by endpoint
+    public Map<String, EndpointLatency> getEndpointLatencies() {
+        return new TreeMap<>(endpointLatencies);
     }
 
-    private void cleanupOldEntries(Queue<Instant> queue) {
-        Instant oneHourAgo = Instant.now().minusSeconds(3600);
-        while (!queue.isEmpty() && queue.peek().isBefore(oneHourAgo)) {
-            queue.poll();
+    // Events waiting in the batcher to be sent
+    public int getPendingEventCount() {
+        return eventBatcher != null ? eventBatcher.getPendingCount() : 0;
+    }
+
+    // Chat messages waiting to be shipped in bulk
+    public int getBufferedChatMessageCount() {
+        return chatBuffer != null ? chatBuffer.size() : 0;
+    }
+
+    public int getChatBufferCapacity() {
+        return chatBuffer != null ? chatBuffer.capacity() : 0;
+    }
+
+    // Chat messages dropped because the buffer was full
+    public long getDroppedChatMessageCount() {
+        return chatBuffer != null ? chatBuffer.getDroppedCount() : 0;
+    }
+
+    // Chat messages and custom events over the rate limits, since startup
+    public long getSuppressedEventCount() {
+        return admissionControl != null ? admissionControl.getSuppressedCount() : 0;
+    }
+
+    public Map<String, Long> getSuppressedEventCounts() {
+        return admissionControl != null ? admissionControl.getSuppressedCounts() : Collections.emptyMap();
+    }
+
+    // Aggregated custom events sent on their own because the rollup table was full
+    public long getRollupOverflowCount() {
+        return rollups.getOverflowCount();
+    }
+
+    public int getQueuedRequestCount() {
+        return requestExecutor.getQueueDepth();
+    }
+
+    public int getRequestQueueCapacity() {
+        return requestExecutor.getQueueCapacity();
+    }
+
+    public int getActiveWorkerCount() {
+        return requestExecutor.getActiveWorkerCount();
+    }
+
+    // Requests of this class waiting for a worker
+    public int getQueuedRequestCount(TrafficClass trafficClass) {
+        return requestExecutor.getQueueDepth(trafficClass);
+    }
+
+    public int getRequestQueueCapacity(TrafficClass trafficClass) {
+        return requestExecutor.getQueueCapacity(trafficClass);
+    }
+
+    public int getActiveWorkerCount(TrafficClass trafficClass) {
+        return requestExecutor.getActiveWorkerCount(trafficClass);
+    }
+
+    public int getMaxWorkerCount(TrafficClass trafficClass) {
+        return requestExecutor.getMaxWorkers(trafficClass);
+    }
+
+    public long getRejectedRequestCount(TrafficClass trafficClass) {
+        return requestExecutor.getRejectedCount(trafficClass);
+    }
+
+    // Requests dropped because the queue was full, including those written to disk
+    public long getRejectedRequestCount() {
+        return requestExecutor.getRejectedCount() + requestExecutor.getSpilledCount();
+    }
+
+    public long getSpilledRequestCount() {
+        return requestExecutor.getSpilledCount();
+    }
+
+    // Failed requests that were scheduled for another attempt
+    public long getRetriedRequestCount() {
+        return retryScheduler.getRetryCount();
+    }
+
+    // Requests currently waiting out their backoff
+    public int getWaitingRetryCount() {
+        return retryScheduler.getWaitingCount();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    public long getCircuitTripCount() {
+        return circuitBreaker.getTripCount();
+    }
+
+    // Requests parked while the circuit breaker is open
+    public int getHeldRequestCount() {
+        synchronized (heldRequests) {
+            return heldRequests.size();
         }
     }
 
-    public int getRequestCount() {
-        cleanupOldEntries(requestTimes);
-        return requestTimes.size();
+    // Size of the outbox segments on disk, including acknowledged events in segments still in use
+    public long getOutboxSizeBytes() {
+        return outbox != null ? outbox.getSizeBytes() : 0;
     }
 
-    public int getErrorCount() {
-        cleanupOldEntries(errorTimes);
-        return errorTimes.size();
+    // Events from previous runs re-sent since startup
+    public long getReplayedEventCount() {
+        return outbox != null ? outbox.getReplayedCount() : 0;
+    }
+
+    // Events sent without being saved because the outbox writer's queue was full
+    public long getUnsavedEventCount() {
+        return outboxWriter != null ? outboxWriter.getSkippedCount() : 0;
+    }
+
+    // Requests that reused an already open connection
+    public long getConnectionPoolHits() {
+        return transport.getPoolHits();
+    }
+
+    // Requests that had to open (and handshake) a new connection
+    public long getConnectionPoolMisses() {
+        return transport.getPoolMisses();
     }
 
     // Public method to allow plugins to use rate-limited logging
@@ -356,17 +1210,121 @@ public class MCMetricsAPI {
     }
 
     public static class MCMetricsException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode; // 0 when the request never got a response
+
         public MCMetricsException(String message) {
+            this(message, 0);
+        }
+
+        public MCMetricsException(String message, int statusCode) {
             super(message);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        // Network errors, rate limits and server errors may succeed later; other rejections won't
+        public boolean isRetryable() {
+            return statusCode == 0 || statusCode == 408 || statusCode == 429 || statusCode >= 500;
         }
     }
 
     public void shutdown() {
+        shutdown(DEFAULT_SHUTDOWN_TIMEOUT_MS);
+    }
+
+    /**
+     * Reloads call this on the instance that was replaced: it still sends what it has, but waiting
+     * for the API, possibly through an outage, must not freeze the thread doing the reload.
+     */
+    public void shutdownInBackground() {
+        Thread thread = new Thread(this::shutdown, "MCMetrics-Shutdown");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sends what is left and stops, waiting at most about timeoutMs in total for the API. Whatever
+     * isn't acknowledged by then stays in the outbox for the next startup.
+     */
+    public void shutdown(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        // Each step on its own: one that fails or times out must never keep the workers, the outbox
+        // or the transport alive, since a reloaded instance opens the same outbox right after
+        boolean interrupted = false;
+        try {
+            shutdownStep("chat buffer", () -> {
+                if (chatBuffer != null) {
+                    chatBuffer.close(Math.min(5000, remainingMillis(deadline)));
+                }
+            });
+            // Counted so far, ahead of the batcher closing so they still go out together
+            interrupted |= shutdownStep("rollups", () -> scheduler.submit(this::sendRollups)
+                    .get(Math.min(5000, remainingMillis(deadline)), TimeUnit.MILLISECONDS));
+            // Events handed to the writer so far, also ahead of the batcher. Later ones are sent unsaved
+            interrupted |= shutdownStep("outbox writer", () -> {
+                if (outboxWriter != null) {
+                    outboxWriter.shutdown(Math.min(5000, remainingMillis(deadline)));
+                }
+            });
+            shutdownStep("batcher", () -> {
+                if (eventBatcher != null) {
+                    eventBatcher.close();
+                }
+            });
+            shutdownStep("retries", retryScheduler::close);
+            shutdownStep("held requests", () -> {
+                List<PrioritizedTask> held;
+                synchronized (heldRequests) {
+                    held = new ArrayList<>(heldRequests);
+                    heldRequests.clear();
+                }
+                for (PrioritizedTask task : held) {
+                    task.reject("MCMetrics API is shutting down");
+                }
+            });
+        } finally {
+            shutdownStep("scheduler", scheduler::shutdown);
+            interrupted |= shutdownStep("workers", () -> {
+                requestExecutor.shutdown();
+                requestExecutor.awaitTermination(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+            });
+            // Whatever wasn't acknowledged by now is sent on the next startup; a handed over
+            // outbox belongs to the new instance now
+            shutdownStep("outbox", () -> {
+                if (outbox != null && !outboxHandedOver) {
+                    outbox.close();
+                }
+            });
+            shutdownStep("transport", transport::close);
+            if (interrupted) {
+                // Only now, an interrupted thread can't even write the outbox to disk
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static long remainingMillis(long deadline) {
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    private interface ShutdownStep {
+        void run() throws Exception;
+    }
+
+    // Returns true if the step was interrupted
+    private boolean shutdownStep(String name, ShutdownStep step) {
         try {
-            executorService.shutdown();
-            executorService.awaitTermination(30, TimeUnit.SECONDS);
+            step.run();
+            return false;
         } catch (Exception e) {
-            logWithRateLimit("SHUTDOWN_ERROR", "Error shutting down MCMetricsAPI: " + e.getMessage());
+            // Not rate limited, every failed step matters
+            logger.severe("Error shutting down MCMetricsAPI (" + name + "): " + e);
+            return e instanceof InterruptedException;
         }
     }
-}
\ No newline at end of file
+}
@@ -57,16 +57,31 @@ public class ConfigManager {
         return config != null ? config.getString(path) : null;
     }
 
+    public String getString(String name, String path, String defaultValue) {
+        YamlDocument config = configs.get(name);
+        return config != null ? config.getString(path, defaultValue) : defaultValue;
+    }
+
     public int getInt(String name, String path) {
         YamlDocument config = configs.get(name);
         return config != null ? config.getInt(path) : 0;
     }
 
+    public int getInt(String name, String path, int defaultValue) {
+        YamlDocument config = configs.get(name);
+        return config != null ? config.getInt(path, defaultValue) : defaultValue;
+    }
+
     public boolean getBoolean(String name, String path) {
         YamlDocument config = configs.get(name);
         return config != null && config.getBoolean(path);
     }
 
+    public boolean getBoolean(String name, String path, boolean defaultValue) {
+        YamlDocument config = configs.get(name);
+        return config != null ? config.getBoolean(path, defaultValue) : defaultValue;
+    }
+
     public double getDouble(String name, String path) {
         YamlDocument config = configs.get(name);
         return config != null ? config.getDouble(path) : 0.0;
@@ -77,6 +92,7 @@ public class ConfigManager {
         return config != null ? config.getList(path) : null;
     }
 
+    @SuppressWarnings("unchecked")
     public <T> T get(String name, String path, Class<T> type) {
         YamlDocument config = configs.get(name);
         return config != null ? (T) config.get(path, type) : null;
@@ -0,0 +1,136 @@
+package net.mcmetrics.shared.json;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+/**
+ * Writes dates as UTC ISO-8601 timestamps with second precision ("2024-01-31T12:00:00Z"), regardless
+ * of the server's timezone. Safe to share between threads, unlike SimpleDateFormat.
+ *
+ * Events are mostly stamped with the current time, so the last formatted second is cached and reused
+ * as is; other seconds of the same day only need the time digits filled in behind the cached date.
+ */
+public class UtcDateAdapter extends TypeAdapter<Date> {
+    private static final long SECONDS_PER_DAY = 86400;
+    private static final int DATE_PREFIX_LENGTH = 11; // "yyyy-MM-ddT"
+    private static final int LENGTH = 20; // "yyyy-MM-ddTHH:mm:ssZ"
+    private static final DateTimeFormatter FALLBACK_FORMAT = DateTimeFormatter
+            .ofPattern("uuuu-MM-dd'T'HH:mm:ss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    // Both replaced as a whole, so readers always see a consistent pair
+    private volatile FormattedSecond lastSecond = new FormattedSecond(Long.MIN_VALUE, null);
+    private volatile DatePrefix lastDay = new DatePrefix(Long.MIN_VALUE, null);
+
+    @Override
+    public void write(JsonWriter out, Date value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(format(value.getTime()));
+        }
+    }
+
+    @Override
+    public Date read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        String text = in.nextString();
+        try {
+            return Date.from(Instant.parse(text));
+        } catch (DateTimeParseException e) {
+            try {
+                return Date.from(OffsetDateTime.parse(text).toInstant());
+            } catch (DateTimeParseException ignored) {
+                throw new JsonSyntaxException("Invalid timestamp: " + text, e);
+            }
+        }
+    }
+
+    public String format(long epochMillis) {
+        long epochSecond = Math.floorDiv(epochMillis, 1000L);
+        FormattedSecond cached = lastSecond;
+        if (cached.epochSecond == epochSecond) {
+            return cached.text;
+        }
+
+        String text = formatSecond(epochSecond);
+        lastSecond = new FormattedSecond(epochSecond, text);
+        return text;
+    }
+
+    private String formatSecond(long epochSecond) {
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        DatePrefix day = lastDay;
+        if (day.epochDay != epochDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            if (date.getYear() < 0 || date.getYear() > 9999) {
+                // Not four digits, leave it to java.time
+                return FALLBACK_FORMAT.format(Instant.ofEpochSecond(epochSecond));
+            }
+            day = new DatePrefix(epochDay, date);
+            lastDay = day;
+        }
+
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        char[] chars = new char[LENGTH];
+        System.arraycopy(day.prefix, 0, chars, 0, DATE_PREFIX_LENGTH);
+        writeTwoDigits(chars, 11, secondOfDay / 3600);
+        chars[13] = ':';
+        writeTwoDigits(chars, 14, secondOfDay / 60 % 60);
+        chars[16] = ':';
+        writeTwoDigits(chars, 17, secondOfDay % 60);
+        chars[19] = 'Z';
+        return new String(chars);
+    }
+
+    private static void writeTwoDigits(char[] chars, int offset, int value) {
+        chars[offset] = (char) ('0' + value / 10);
+        chars[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    private static class FormattedSecond {
+        final long epochSecond;
+        final String text;
+
+        FormattedSecond(long epochSecond, String text) {
+            this.epochSecond = epochSecond;
+            this.text = text;
+        }
+    }
+
+    private static class DatePrefix {
+        final long epochDay;
+        final char[] prefix;
+
+        DatePrefix(long epochDay, LocalDate date) {
+            this.epochDay = epochDay;
+            this.prefix = new char[DATE_PREFIX_LENGTH];
+            if (date != null) {
+                int year = date.getYear();
+                writeTwoDigits(prefix, 0, year / 100);
+                writeTwoDigits(prefix, 2, year % 100);
+                prefix[4] = '-';
+                writeTwoDigits(prefix, 5, date.getMonthValue());
+                prefix[7] = '-';
+                writeTwoDigits(prefix, 8, date.getDayOfMonth());
+                prefix[10] = 'T';
+            }
+        }
+    }
+}
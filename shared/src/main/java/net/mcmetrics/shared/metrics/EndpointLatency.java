@@ -0,0 +1,33 @@
+package net.mcmetrics.shared.metrics;
+
+/**
+ * Latency histograms for one API endpoint. Connect time is only recorded for requests that had to
+ * open a new connection, so reused connections don't drag its percentiles down to zero.
+ */
+public class EndpointLatency {
+    private final LatencyHistogram connect = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+
+    public void record(long connectNanos, long timeToFirstByteNanos, long totalNanos) {
+        if (connectNanos >= 0) {
+            connect.record(connectNanos);
+        }
+        if (timeToFirstByteNanos >= 0) {
+            timeToFirstByte.record(timeToFirstByteNanos);
+        }
+        total.record(totalNanos);
+    }
+
+    public LatencyHistogram getConnect() {
+        return connect;
+    }
+
+    public LatencyHistogram getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,74 @@
+package net.mcmetrics.shared.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets from 100 microseconds to about two minutes.
+ * Each bucket is ~19% wider than the previous one, which bounds the error of a percentile to that.
+ */
+public class LatencyHistogram {
+    private static final double MIN_MICROS = 100;
+    private static final double GROWTH = 1.19;
+    private static final int BUCKETS = 82;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        double micros = nanos / 1000.0;
+        int bucket = micros <= MIN_MICROS ? 0 : (int) (Math.log(micros / MIN_MICROS) / LOG_GROWTH) + 1;
+        counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile (0-100), in milliseconds, or -1 if
+     * nothing has been recorded.
+     */
+    public double getPercentileMillis(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return -1;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(1, rank)) {
+                return upperBoundMicros(i) / TimeUnit.MILLISECONDS.toMicros(1);
+            }
+        }
+        return upperBoundMicros(BUCKETS - 1) / TimeUnit.MILLISECONDS.toMicros(1);
+    }
+
+    // e.g. "12/40/118 ms" for p50/p95/p99, or "-" if empty
+    public String formatPercentiles() {
+        if (getCount() == 0) {
+            return "-";
+        }
+        return formatMillis(getPercentileMillis(50)) + "/" + formatMillis(getPercentileMillis(95)) + "/"
+                + formatMillis(getPercentileMillis(99)) + " ms";
+    }
+
+    private static double upperBoundMicros(int bucket) {
+        return MIN_MICROS * Math.pow(GROWTH, bucket);
+    }
+
+    private static String formatMillis(double millis) {
+        return millis < 10 ? String.format("%.1f", millis) : String.valueOf(Math.round(millis));
+    }
+}
@@ -0,0 +1,53 @@
+package net.mcmetrics.shared.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events over a sliding window using a fixed ring of buckets, so both recording and reading
+ * take constant time and memory no matter how many events there are. Buckets are reused once they
+ * fall out of the window; an increment racing with a bucket reset may be lost, which is fine for stats.
+ */
+public class SlidingWindowCounter {
+    private final int bucketCount;
+    private final long bucketMillis;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray bucketIds; // which bucket (time / bucketMillis) each slot currently holds
+
+    public SlidingWindowCounter(int bucketCount, long bucketMillis) {
+        this.bucketCount = bucketCount;
+        this.bucketMillis = bucketMillis;
+        this.counts = new AtomicLongArray(bucketCount);
+        this.bucketIds = new AtomicLongArray(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            bucketIds.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    // One hour in one-minute buckets
+    public static SlidingWindowCounter lastHour() {
+        return new SlidingWindowCounter(60, 60_000);
+    }
+
+    public void increment() {
+        long bucketId = System.currentTimeMillis() / bucketMillis;
+        int slot = (int) (bucketId % bucketCount);
+
+        long current = bucketIds.get(slot);
+        if (current != bucketId && bucketIds.compareAndSet(slot, current, bucketId)) {
+            // First event in a new bucket; whatever the slot held is out of the window now
+            counts.set(slot, 0);
+        }
+        counts.incrementAndGet(slot);
+    }
+
+    public long getCount() {
+        long oldest = System.currentTimeMillis() / bucketMillis - bucketCount + 1;
+        long total = 0;
+        for (int slot = 0; slot < bucketCount; slot++) {
+            if (bucketIds.get(slot) >= oldest) {
+                total += counts.get(slot);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,17 @@
+package net.mcmetrics.shared.models;
+
+import java.util.List;
+
+public class EventBatch {
+    public List<Entry> events;
+
+    public static class Entry {
+        public String type; // e.g. "chat_message", matches the /insert/<type> endpoint
+        public Object data;
+
+        public Entry(String type, Object data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package net.mcmetrics.shared.models;
+
+import java.util.List;
+
+public class SessionBatch {
+    public List<Session> sessions;
+
+    public SessionBatch(List<Session> sessions) {
+        this.sessions = sessions;
+    }
+}
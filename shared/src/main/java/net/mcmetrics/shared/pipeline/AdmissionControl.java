@@ -0,0 +1,111 @@
+package net.mcmetrics.shared.pipeline;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limits for high-volume inputs like chat and custom events: every player gets a token bucket
+ * per event type, and every event type one shared by all players. A single spam bot then runs out of
+ * its own tokens long before it could crowd out everyone else, and a plugin looping on one event
+ * can't flood the API either.
+ *
+ * Events over a limit aren't sent; they are only counted per event type.
+ */
+public class AdmissionControl {
+    private static final int PLAYER_BUCKETS = 4096;
+    private static final int EVENT_TYPE_BUCKETS = 256;
+    // Event types are counted separately up to this many, anything beyond shares one counter
+    private static final int MAX_COUNTED_TYPES = 64;
+    private static final String OTHER_TYPES = "other";
+
+    private final TokenBucketTable playerBuckets;
+    private final TokenBucketTable eventTypeBuckets;
+    private final long origin = System.nanoTime();
+    private final Map<String, Suppressed> suppressed = new ConcurrentHashMap<>();
+    private final AtomicLong suppressedTotal = new AtomicLong();
+
+    public AdmissionControl(int playerPerSecond, int playerBurst, int eventTypePerSecond, int eventTypeBurst) {
+        this.playerBuckets = new TokenBucketTable(PLAYER_BUCKETS, playerPerSecond, playerBurst);
+        this.eventTypeBuckets = new TokenBucketTable(EVENT_TYPE_BUCKETS, eventTypePerSecond, eventTypeBurst);
+    }
+
+    /**
+     * Safe from any thread.
+     *
+     * @param player null for events without a player, which only count towards the event type
+     * @return false if the event is over a limit and should be dropped
+     */
+    public boolean tryAdmit(UUID player, String eventType) {
+        long now = (System.nanoTime() - origin) / 1000;
+        long typeHash = eventType.hashCode();
+        // The player's own bucket goes first, so a spammer doesn't use up the event type's tokens
+        long playerKey = player != null ? TokenBucketTable.mix(
+                player.getMostSignificantBits() ^ player.getLeastSignificantBits() * 31 ^ typeHash) : 0;
+        boolean admitted = player == null || playerBuckets.tryAcquire(playerKey, now);
+        if (admitted && !eventTypeBuckets.tryAcquire(TokenBucketTable.mix(typeHash), now)) {
+            // Dropped for the event type, the player shouldn't pay for it
+            if (player != null) {
+                playerBuckets.refund(playerKey);
+            }
+            admitted = false;
+        }
+        if (!admitted) {
+            suppressedTotal.incrementAndGet();
+            counterFor(eventType).count();
+        }
+        return admitted;
+    }
+
+    public long getSuppressedCount() {
+        return suppressedTotal.get();
+    }
+
+    // Events suppressed per type since the plugin started
+    public Map<String, Long> getSuppressedCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, Suppressed> entry : suppressed.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().total.get());
+        }
+        return counts;
+    }
+
+    // Events suppressed per type since the last call, for a periodic summary
+    public Map<String, Long> takeRecentlySuppressed() {
+        if (suppressed.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, Suppressed> entry : suppressed.entrySet()) {
+            long recent = entry.getValue().recent.getAndSet(0);
+            if (recent > 0) {
+                counts.put(entry.getKey(), recent);
+            }
+        }
+        return counts;
+    }
+
+    private Suppressed counterFor(String eventType) {
+        Suppressed counter = suppressed.get(eventType);
+        if (counter != null) {
+            return counter;
+        }
+        if (suppressed.size() >= MAX_COUNTED_TYPES) {
+            eventType = OTHER_TYPES;
+        }
+        return suppressed.computeIfAbsent(eventType, type -> new Suppressed());
+    }
+
+    private static class Suppressed {
+        final AtomicLong total = new AtomicLong();
+        final AtomicLong recent = new AtomicLong();
+
+        void count() {
+            total.incrementAndGet();
+            recent.incrementAndGet();
+        }
+    }
+}
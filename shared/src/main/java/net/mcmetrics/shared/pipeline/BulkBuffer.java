@@ -0,0 +1,95 @@
+package net.mcmetrics.shared.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fixed-size buffer for high-volume, low-value events such as chat messages, shipped in bulk
+ * once {@code maxBulk} are waiting or {@code maxDelayMs} has passed. Unlike {@link EventBatcher}
+ * nothing is tracked per event: adding never blocks, allocates nothing and simply drops the event
+ * when the buffer is full, so a chat flood costs a bounded amount of memory and one request per
+ * bulk instead of one per line.
+ *
+ * Bulks are built and handed to the sender on the scheduler thread only.
+ */
+public class BulkBuffer<E> {
+    private final RingBuffer<E> buffer;
+    private final int maxBulk;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<List<E>> sender;
+    private final ScheduledFuture<?> timer;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public BulkBuffer(int capacity, int maxBulk, long maxDelayMs, ScheduledExecutorService scheduler,
+            Consumer<List<E>> sender) {
+        this.buffer = new RingBuffer<>(capacity);
+        this.maxBulk = Math.max(1, maxBulk);
+        this.scheduler = scheduler;
+        this.sender = sender;
+        long delay = Math.max(10, maxDelayMs);
+        this.timer = scheduler.scheduleWithFixedDelay(this::flush, delay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Safe from any thread; false if the buffer is full and the event was dropped
+    public boolean add(E event) {
+        if (!buffer.offer(event)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (buffer.size() >= maxBulk && flushScheduled.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+        return true;
+    }
+
+    public int size() {
+        return buffer.size();
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Stops the timer and ships what is left, waiting at most timeoutMs for that to be handed off
+    public void close(long timeoutMs) {
+        timer.cancel(false);
+        try {
+            scheduler.submit(this::flush).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // The scheduler is already gone or stuck; what's left is lost like any dropped event
+        }
+    }
+
+    private void flush() {
+        while (!buffer.isEmpty()) {
+            List<E> bulk = new ArrayList<>(Math.min(maxBulk, buffer.size()));
+            E event;
+            while (bulk.size() < maxBulk && (event = buffer.poll()) != null) {
+                bulk.add(event);
+            }
+            if (bulk.isEmpty()) {
+                // The next event is claimed but not yet published, the next flush picks it up
+                return;
+            }
+            try {
+                sender.accept(bulk);
+            } catch (RuntimeException e) {
+                // An exception would cancel the timer; the sender reports its own failures
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.mcmetrics.shared.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Collects events of every type and hands them off in groups, as soon as either
+ * {@code maxEvents} are waiting or {@code maxDelayMs} has passed, whichever comes first.
+ */
+public class EventBatcher {
+    private final int maxEvents;
+    private final Consumer<List<BatchedEvent>> sender;
+    private final ScheduledExecutorService scheduler;
+    private final ScheduledFuture<?> timer;
+
+    private final Queue<BatchedEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private volatile boolean closed;
+
+    public EventBatcher(int maxEvents, long maxDelayMs, ScheduledExecutorService scheduler,
+            Consumer<List<BatchedEvent>> sender) {
+        this.maxEvents = Math.max(1, maxEvents);
+        this.sender = sender;
+        this.scheduler = scheduler;
+        long delay = Math.max(10, maxDelayMs);
+        this.timer = scheduler.scheduleWithFixedDelay(this::flush, delay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // durable: the event is already saved in the outbox
+    public CompletableFuture<Void> add(TrafficClass trafficClass, String type, Object data, boolean durable) {
+        BatchedEvent event = new BatchedEvent(trafficClass, type, data, durable);
+        pending.add(event);
+        pendingCount.incrementAndGet();
+
+        if (closed) {
+            // The timer is gone, so don't leave the event waiting
+            flush();
+        } else if (pendingCount.get() >= maxEvents && flushScheduled.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+        return event.future;
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    // Sends everything that is waiting, in groups of at most maxEvents
+    public void flush() {
+        synchronized (flushLock) {
+            while (true) {
+                List<BatchedEvent> batch = new ArrayList<>(Math.min(maxEvents, Math.max(1, pendingCount.get())));
+                BatchedEvent event;
+                while (batch.size() < maxEvents && (event = pending.poll()) != null) {
+                    batch.add(event);
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+
+                pendingCount.addAndGet(-batch.size());
+                try {
+                    sender.accept(batch);
+                } catch (Exception e) {
+                    for (BatchedEvent failed : batch) {
+                        failed.future.completeExceptionally(e);
+                    }
+                }
+            }
+        }
+    }
+
+    // Stops the timer and sends what is left; later events are sent on their own
+    public void close() {
+        closed = true;
+        timer.cancel(false);
+        flush();
+    }
+
+    public static class BatchedEvent {
+        private final TrafficClass trafficClass;
+        private final String type;
+        private final Object data;
+        private final boolean durable;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        BatchedEvent(TrafficClass trafficClass, String type, Object data, boolean durable) {
+            this.trafficClass = trafficClass;
+            this.type = type;
+            this.data = data;
+            this.durable = durable;
+        }
+
+        public TrafficClass getTrafficClass() {
+            return trafficClass;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public Object getData() {
+            return data;
+        }
+
+        public boolean isDurable() {
+            return durable;
+        }
+
+        public CompletableFuture<Void> getFuture() {
+            return future;
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package net.mcmetrics.shared.pipeline;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented log of every event before it is uploaded. Each segment has a sidecar
+ * file listing the records the API has acknowledged; once a segment is full and every record in
+ * it is acknowledged, both files are deleted. Whatever is left when the plugin starts is replayed
+ * at a fixed rate, so events survive both API outages and JVM crashes.
+ *
+ * Records are written straight to the file, so they survive the JVM dying. They are fsynced in
+ * groups on a timer rather than per record.
+ */
+public class Outbox {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String ACK_SUFFIX = ".ack";
+    private static final long MAX_SEGMENT_BYTES = 4L * 1024 * 1024;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    private static final int RECORD_HEADER_BYTES = 12; // int length + long crc32
+    private static final long REPLAY_TICK_MS = 100;
+
+    private final File directory;
+    private final long maxTotalBytes;
+    private final BiConsumer<String, String> errorLogger;
+
+    private final Object appendLock = new Object();
+    private final Set<Segment> liveSegments = ConcurrentHashMap.newKeySet();
+    private final Deque<Segment> replaySegments = new ArrayDeque<>(); // left over from previous runs
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private Segment activeSegment;
+    private long nextSegmentId;
+
+    private ReplayCursor replayCursor; // guarded by this
+    private boolean replayDone;
+    private volatile ScheduledFuture<?> syncTask;
+    private volatile ScheduledFuture<?> replayTask;
+    private volatile boolean closed;
+
+    public Outbox(File directory, long maxTotalBytes, BiConsumer<String, String> errorLogger) throws IOException {
+        this.directory = directory;
+        this.maxTotalBytes = maxTotalBytes;
+        this.errorLogger = errorLogger;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        File[] logFiles = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX)
+                && name.endsWith(LOG_SUFFIX));
+        List<Long> ids = new ArrayList<>();
+        if (logFiles != null) {
+            for (File file : logFiles) {
+                String name = file.getName();
+                try {
+                    ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (long id : ids) {
+            Segment segment = new Segment(id);
+            segment.loadAcknowledgements();
+            liveSegments.add(segment);
+            replaySegments.add(segment);
+            totalBytes.addAndGet(segment.logFile.length());
+        }
+        nextSegmentId = ids.isEmpty() ? 0 : ids.get(ids.size() - 1) + 1;
+    }
+
+    /**
+     * Starts the group fsync timer and the replay of events left over from previous runs.
+     * Replay only sends events while {@code canReplay} returns true, so it backs off when
+     * the upload pipeline is busy. After {@link #stop}, another scheduler can take over with
+     * this, and replay goes on where it was.
+     */
+    public synchronized void start(ScheduledExecutorService scheduler, long syncIntervalMs, int replayPerSecond,
+            BooleanSupplier canReplay, Consumer<Record> replayHandler) {
+        syncTask = scheduler.scheduleWithFixedDelay(this::sync, syncIntervalMs, syncIntervalMs,
+                TimeUnit.MILLISECONDS);
+
+        if (replayCursor == null && !replaySegments.isEmpty()) {
+            replayCursor = new ReplayCursor();
+        }
+        if (replayCursor != null && !replayDone) {
+            int perTick = Math.max(1, (int) (replayPerSecond * REPLAY_TICK_MS / 1000));
+            replayTask = scheduler.scheduleWithFixedDelay(() -> replayTick(perTick, canReplay, replayHandler),
+                    REPLAY_TICK_MS, REPLAY_TICK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Stops the timers without closing anything, so the outbox can be handed to another scheduler
+    public synchronized void stop() {
+        if (syncTask != null) {
+            syncTask.cancel(false);
+        }
+        if (replayTask != null) {
+            replayTask.cancel(false);
+        }
+    }
+
+    public synchronized boolean hasPendingReplay() {
+        return replayCursor != null && !replayDone;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    // Returns null if the event could not be persisted; it is then sent without a durability guarantee
+    public Entry append(TrafficClass trafficClass, String type, JsonElement data) {
+        JsonObject record = new JsonObject();
+        record.addProperty("traffic_class", trafficClass.name());
+        record.addProperty("type", type);
+        record.add("data", data);
+        byte[] payload = record.toString().getBytes(StandardCharsets.UTF_8);
+
+        if (totalBytes.get() + payload.length > maxTotalBytes) {
+            errorLogger.accept("OUTBOX_ERROR", "Outbox is full (" + (maxTotalBytes / 1024 / 1024)
+                    + " MB), new events are not being saved to disk until the backlog is sent");
+            return null;
+        }
+
+        synchronized (appendLock) {
+            if (closed) {
+                return null;
+            }
+            try {
+                if (activeSegment == null || activeSegment.size >= MAX_SEGMENT_BYTES) {
+                    rollSegment();
+                }
+                Segment segment = activeSegment;
+                return new Entry(segment, segment.write(payload));
+            } catch (IOException e) {
+                errorLogger.accept("OUTBOX_ERROR", "Failed to save event to disk: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    public long getSizeBytes() {
+        return totalBytes.get();
+    }
+
+    public int getSegmentCount() {
+        return liveSegments.size();
+    }
+
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    // Seals the active segment and forces everything to disk. Unacknowledged events stay for the next start.
+    public void close() {
+        closed = true;
+        if (syncTask != null) {
+            syncTask.cancel(false);
+        }
+        if (replayTask != null) {
+            replayTask.cancel(false);
+        }
+        synchronized (this) {
+            if (replayCursor != null) {
+                replayCursor.close();
+            }
+        }
+
+        synchronized (appendLock) {
+            if (activeSegment != null) {
+                activeSegment.seal();
+                activeSegment = null;
+            }
+        }
+
+        for (Segment segment : liveSegments) {
+            segment.sync();
+            segment.closeChannels();
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        if (activeSegment != null) {
+            activeSegment.seal();
+        }
+        Segment segment = new Segment(nextSegmentId++);
+        segment.openForAppend();
+        liveSegments.add(segment);
+        activeSegment = segment;
+    }
+
+    private void sync() {
+        for (Segment segment : liveSegments) {
+            segment.sync();
+        }
+    }
+
+    // Synchronized, a tick of the previous scheduler may still be running when another one takes over
+    private synchronized void replayTick(int budget, BooleanSupplier canReplay, Consumer<Record> replayHandler) {
+        if (closed || replayDone || !canReplay.getAsBoolean()) {
+            return;
+        }
+
+        for (int i = 0; i < budget; i++) {
+            Record record = replayCursor.next();
+            if (record == null) {
+                replayDone = true;
+                replayTask.cancel(false);
+                return;
+            }
+            replayedCount.incrementAndGet();
+            replayHandler.accept(record);
+        }
+    }
+
+    public static class Record {
+        private final TrafficClass trafficClass;
+        private final String type;
+        private final JsonElement data;
+        private final Entry entry;
+
+        Record(TrafficClass trafficClass, String type, JsonElement data, Entry entry) {
+            this.trafficClass = trafficClass;
+            this.type = type;
+            this.data = data;
+            this.entry = entry;
+        }
+
+        public TrafficClass getTrafficClass() {
+            return trafficClass;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public JsonElement getData() {
+            return data;
+        }
+
+        public Entry getEntry() {
+            return entry;
+        }
+    }
+
+    // Handle for one persisted event, acknowledged once the API has accepted it
+    public static class Entry {
+        private final Segment segment;
+        private final int index;
+        private final AtomicBoolean acknowledged = new AtomicBoolean();
+
+        Entry(Segment segment, int index) {
+            this.segment = segment;
+            this.index = index;
+        }
+
+        public void acknowledge() {
+            if (acknowledged.compareAndSet(false, true)) {
+                segment.acknowledge(index);
+            }
+        }
+    }
+
+    private class Segment {
+        final File logFile;
+        final File ackFile;
+        FileChannel logChannel;
+        FileChannel ackChannel;
+        BitSet previouslyAcknowledged = new BitSet();
+        long size;
+        int appended;
+        int acknowledged;
+        boolean sealed;
+        boolean dirty;
+        boolean deleted;
+
+        Segment(long id) {
+            String name = SEGMENT_PREFIX + String.format("%020d", id);
+            this.logFile = new File(directory, name + LOG_SUFFIX);
+            this.ackFile = new File(directory, name + ACK_SUFFIX);
+        }
+
+        void openForAppend() throws IOException {
+            logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+
+        void loadAcknowledgements() {
+            size = logFile.length();
+            if (!ackFile.exists()) {
+                return;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(ackFile)))) {
+                while (true) {
+                    previouslyAcknowledged.set(in.readInt());
+                }
+            } catch (EOFException ignored) {
+                // End of file, or a torn last entry
+            } catch (IOException e) {
+                errorLogger.accept("OUTBOX_ERROR", "Failed to read " + ackFile.getName() + ": " + e.getMessage());
+            }
+            acknowledged = previouslyAcknowledged.cardinality();
+        }
+
+        synchronized int write(byte[] payload) throws IOException {
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, payload.length);
+
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+            buffer.putInt(payload.length);
+            buffer.putLong(crc.getValue());
+            buffer.put(payload);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                logChannel.write(buffer);
+            }
+
+            size += buffer.limit();
+            totalBytes.addAndGet(buffer.limit());
+            dirty = true;
+            return appended++;
+        }
+
+        // Called by the replay cursor for every record it reads from a previous run's segment
+        synchronized void countReplayed() {
+            appended++;
+        }
+
+        synchronized void acknowledge(int index) {
+            if (deleted) {
+                return;
+            }
+            try {
+                if (ackChannel == null) {
+                    ackChannel = FileChannel.open(ackFile.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(4);
+                buffer.putInt(index);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    ackChannel.write(buffer);
+                }
+                dirty = true;
+                if (closed) {
+                    // The request outlived the outbox; nothing will sync the file after this
+                    ackChannel.force(false);
+                }
+            } catch (IOException e) {
+                // The event will be sent again after a restart
+                errorLogger.accept("OUTBOX_ERROR", "Failed to acknowledge saved event: " + e.getMessage());
+            } finally {
+                if (closed) {
+                    closeChannels();
+                }
+            }
+            acknowledged++;
+            deleteIfDone();
+        }
+
+        synchronized void seal() {
+            sealed = true;
+            if (logChannel != null) {
+                sync();
+                try {
+                    logChannel.close();
+                } catch (IOException ignored) {
+                }
+                logChannel = null;
+            }
+            deleteIfDone();
+        }
+
+        synchronized void sync() {
+            if (!dirty || deleted) {
+                return;
+            }
+            try {
+                if (logChannel != null) {
+                    logChannel.force(false);
+                }
+                if (ackChannel != null) {
+                    ackChannel.force(false);
+                }
+                dirty = false;
+            } catch (IOException e) {
+                errorLogger.accept("OUTBOX_ERROR", "Failed to sync outbox to disk: " + e.getMessage());
+            }
+        }
+
+        synchronized void closeChannels() {
+            try {
+                if (logChannel != null) {
+                    logChannel.close();
+                }
+                if (ackChannel != null) {
+                    ackChannel.close();
+                }
+            } catch (IOException ignored) {
+            }
+            logChannel = null;
+            ackChannel = null;
+        }
+
+        private void deleteIfDone() {
+            if (!sealed || deleted || acknowledged < appended) {
+                return;
+            }
+            deleted = true;
+            closeChannels();
+            if (!logFile.delete() && logFile.exists()) {
+                errorLogger.accept("OUTBOX_ERROR", "Failed to delete " + logFile.getName());
+            }
+            ackFile.delete();
+            liveSegments.remove(this);
+            totalBytes.addAndGet(-size);
+        }
+    }
+
+    // Streams unacknowledged records out of the previous runs' segments, one segment at a time
+    private class ReplayCursor {
+        private Segment segment;
+        private DataInputStream in;
+        private int index;
+
+        Record next() {
+            while (true) {
+                if (in == null && !openNextSegment()) {
+                    return null;
+                }
+
+                Record record = readRecord();
+                if (record != null) {
+                    return record;
+                }
+
+                // End of this segment (or a torn write after a crash)
+                closeStream();
+                segment.seal();
+                segment = null;
+            }
+        }
+
+        private boolean openNextSegment() {
+            while ((segment = replaySegments.poll()) != null) {
+                try {
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.logFile)));
+                    index = 0;
+                    return true;
+                } catch (IOException e) {
+                    errorLogger.accept("OUTBOX_ERROR", "Failed to open " + segment.logFile.getName() + ": "
+                            + e.getMessage());
+                    segment.seal();
+                }
+            }
+            return false;
+        }
+
+        // Next record that still needs sending, or null at the end of the segment
+        private Record readRecord() {
+            try {
+                while (true) {
+                    int length = in.readInt();
+                    long expectedCrc = in.readLong();
+                    if (length < 0 || length > MAX_RECORD_BYTES) {
+                        return null;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+
+                    CRC32 crc = new CRC32();
+                    crc.update(payload, 0, payload.length);
+                    if (crc.getValue() != expectedCrc) {
+                        return null;
+                    }
+
+                    int recordIndex = index++;
+                    segment.countReplayed();
+                    if (segment.previouslyAcknowledged.get(recordIndex)) {
+                        continue;
+                    }
+
+                    Entry entry = new Entry(segment, recordIndex);
+                    try {
+                        JsonObject record = JsonParser.parseString(new String(payload, StandardCharsets.UTF_8))
+                                .getAsJsonObject();
+                        return new Record(TrafficClass.valueOf(record.get("traffic_class").getAsString()),
+                                record.get("type").getAsString(), record.get("data"), entry);
+                    } catch (Exception e) {
+                        // Unreadable, nothing to send; don't keep the segment around for it
+                        entry.acknowledge();
+                    }
+                }
+            } catch (EOFException e) {
+                return null;
+            } catch (IOException e) {
+                errorLogger.accept("OUTBOX_ERROR", "Failed to read saved events: " + e.getMessage());
+                return null;
+            }
+        }
+
+        private void closeStream() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+                in = null;
+            }
+        }
+
+        void close() {
+            closeStream();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.mcmetrics.shared.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs outbox writes on a thread of its own, so neither the server's main thread nor the scheduler
+ * that runs the timers ever waits for the disk. The queue is bounded: when the disk falls behind,
+ * {@link #submit} refuses the write and the caller sends the event without saving it.
+ */
+public class OutboxWriter {
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong skipped = new AtomicLong();
+
+    public OutboxWriter(int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "MCMetrics-OutboxWriter");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Safe from any thread; false if the queue is full or the writer is shut down, the write isn't run then
+    public boolean submit(Runnable write) {
+        try {
+            executor.execute(write);
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (!executor.isShutdown()) {
+                skipped.incrementAndGet();
+            }
+            return false;
+        }
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    // Events that were sent without being saved because the queue was full
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    // Writes already queued still run, new ones are refused
+    public boolean shutdown(long timeoutMs) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,33 @@
+package net.mcmetrics.shared.pipeline;
+
+/**
+ * What the request executor does when its queue is full.
+ */
+public enum OverflowPolicy {
+    // Drop the request that has been waiting the longest
+    DropOldest("drop-oldest"),
+    // Drop the oldest request of the least important traffic class
+    DropByPriority("drop-by-priority"),
+    // Drop the new request; its events stay in the outbox and are sent on the next startup
+    SpillToDisk("spill-to-disk");
+
+    private final String value;
+
+    OverflowPolicy(String value) {
+        this.value = value;
+    }
+
+    public static OverflowPolicy fromString(String text) {
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            if (policy.value.equalsIgnoreCase(text)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown overflow policy: " + text);
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
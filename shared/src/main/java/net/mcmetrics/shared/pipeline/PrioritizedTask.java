@@ -0,0 +1,25 @@
+package net.mcmetrics.shared.pipeline;
+
+/**
+ * A unit of work for the {@link RequestExecutor}. Tasks know their traffic class so the executor
+ * can decide what to shed, and how to fail themselves when they are dropped.
+ */
+public abstract class PrioritizedTask implements Runnable {
+    private final TrafficClass trafficClass;
+
+    protected PrioritizedTask(TrafficClass trafficClass) {
+        this.trafficClass = trafficClass;
+    }
+
+    public TrafficClass getTrafficClass() {
+        return trafficClass;
+    }
+
+    // Called instead of run() when the task is dropped
+    public abstract void reject(String reason);
+
+    // Whether everything this task sends is already saved in the outbox and will be replayed if dropped
+    public boolean isDurable() {
+        return false;
+    }
+}
@@ -0,0 +1,324 @@
+package net.mcmetrics.shared.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size worker pool with a bounded queue for API requests. Each request can block on the
+ * network for a long time, so the number of threads must not grow with the number of requests.
+ *
+ * Every {@link TrafficClass} is a bulkhead: it has its own queue and may only use so many workers
+ * at once, and idle workers always take the most important class that has room. A chat flood then
+ * fills up the chat queue and a couple of workers, while payments still start right away. When a
+ * class queue, or the queue as a whole, is full the configured {@link OverflowPolicy} decides what
+ * gets dropped.
+ */
+public class RequestExecutor {
+    private static final TrafficClass[] CLASSES = TrafficClass.values();
+
+    private final ThreadPoolExecutor executor;
+    private final OverflowPolicy overflowPolicy;
+    private final int workers;
+    private final int queueCapacity;
+
+    // Guarded by this
+    private final Lane[] lanes = new Lane[CLASSES.length];
+    private int queued;
+    private int drainers; // workers currently looping over the lanes
+    private long sequence;
+    private boolean shutdown;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+
+    public RequestExecutor(int workers, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this(workers, queueCapacity, overflowPolicy, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /**
+     * @param maxWorkers per class, classes that aren't in the map get their default share
+     * @param maxQueued  per class, likewise
+     */
+    public RequestExecutor(int workers, int queueCapacity, OverflowPolicy overflowPolicy,
+            Map<TrafficClass, Integer> maxWorkers, Map<TrafficClass, Integer> maxQueued) {
+        this.overflowPolicy = overflowPolicy;
+        this.workers = Math.max(1, workers);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        for (TrafficClass trafficClass : CLASSES) {
+            Integer classWorkers = maxWorkers.get(trafficClass);
+            Integer classQueued = maxQueued.get(trafficClass);
+            lanes[trafficClass.ordinal()] = new Lane(
+                    Math.min(this.workers, classWorkers != null
+                            ? Math.max(1, classWorkers) : trafficClass.getDefaultMaxWorkers(this.workers)),
+                    Math.min(this.queueCapacity, classQueued != null
+                            ? Math.max(1, classQueued) : trafficClass.getDefaultMaxQueued(this.queueCapacity)));
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "MCMetrics-Worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        // Never holds more than one drain loop per worker, the requests themselves wait in the lanes
+        this.executor = new ThreadPoolExecutor(this.workers, this.workers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void execute(PrioritizedTask task) {
+        List<Rejection> rejections = new ArrayList<>(1);
+        boolean startDrainer;
+        synchronized (this) {
+            if (shutdown) {
+                rejections.add(new Rejection(task, "MCMetrics API is shutting down", false));
+                startDrainer = false;
+            } else {
+                enqueue(task, rejections);
+                startDrainer = drainers < workers && hasRunnable();
+                if (startDrainer) {
+                    drainers++;
+                }
+            }
+        }
+
+        if (startDrainer) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Shut down in the meantime; with no worker left, nothing would ever run what's queued
+                synchronized (this) {
+                    if (--drainers == 0) {
+                        for (Lane lane : lanes) {
+                            for (Queued left : lane.queue) {
+                                rejections.add(new Rejection(left.task, "MCMetrics API is shutting down", false));
+                            }
+                            lane.queue.clear();
+                        }
+                        queued = 0;
+                    }
+                }
+            }
+        }
+        // Failing a task completes its future, which must not run under the lock
+        for (Rejection rejection : rejections) {
+            if (rejection.spilled) {
+                spilledCount.incrementAndGet();
+                rejection.task.reject(rejection.reason);
+            } else {
+                rejectedCount.incrementAndGet();
+                lanes[rejection.task.getTrafficClass().ordinal()].rejected.incrementAndGet();
+                rejection.task.reject(rejection.reason);
+            }
+        }
+    }
+
+    // Runs requests until no class with queued requests has a free worker left
+    private void drain() {
+        Queued next = null;
+        while (true) {
+            synchronized (this) {
+                if (next != null) {
+                    lanes[next.task.getTrafficClass().ordinal()].running--;
+                }
+                next = pollRunnable();
+                if (next == null) {
+                    drainers--;
+                    return;
+                }
+                lanes[next.task.getTrafficClass().ordinal()].running++;
+            }
+            try {
+                next.task.run();
+            } catch (RuntimeException e) {
+                // Tasks report their own failures, a stray exception must not stop the loop
+            }
+        }
+    }
+
+    private void enqueue(PrioritizedTask task, List<Rejection> rejections) {
+        Lane lane = lanes[task.getTrafficClass().ordinal()];
+        if (lane.queue.size() >= lane.maxQueued) {
+            // Full within its own class, so the policy can only choose between requests of that class
+            if (overflowPolicy == OverflowPolicy.SpillToDisk) {
+                spillOrReject(task, "Request queue for " + task.getTrafficClass() + " is full", rejections);
+                return;
+            }
+            Queued oldest = lane.queue.poll();
+            queued--;
+            rejections.add(new Rejection(oldest.task, "Request queue for " + task.getTrafficClass()
+                    + " is full, dropped the oldest request", false));
+        } else if (queued >= queueCapacity) {
+            switch (overflowPolicy) {
+                case DropOldest: {
+                    Lane victim = null;
+                    for (Lane candidate : lanes) {
+                        if (!candidate.queue.isEmpty()
+                                && (victim == null || candidate.queue.peek().sequence < victim.queue.peek().sequence)) {
+                            victim = candidate;
+                        }
+                    }
+                    queued--;
+                    rejections.add(new Rejection(victim.queue.poll().task,
+                            "Request queue is full, dropped the oldest request", false));
+                    break;
+                }
+
+                case DropByPriority: {
+                    // Oldest queued request of the least important class
+                    Lane victim = null;
+                    for (int i = lanes.length - 1; i >= 0 && victim == null; i--) {
+                        if (!lanes[i].queue.isEmpty()) {
+                            victim = lanes[i];
+                        }
+                    }
+                    TrafficClass victimClass = victim.queue.peek().task.getTrafficClass();
+                    if (task.getTrafficClass().isLessImportantThan(victimClass)) {
+                        rejections.add(new Rejection(task, "Request queue is full, dropped a "
+                                + task.getTrafficClass() + " request", false));
+                        return;
+                    }
+                    queued--;
+                    rejections.add(new Rejection(victim.queue.poll().task, "Request queue is full, dropped a "
+                            + victimClass + " request in favour of a " + task.getTrafficClass() + " request", false));
+                    break;
+                }
+
+                case SpillToDisk:
+                    spillOrReject(task, "Request queue is full", rejections);
+                    return;
+            }
+        }
+
+        lane.queue.add(new Queued(task, sequence++));
+        queued++;
+    }
+
+    private static void spillOrReject(PrioritizedTask task, String reason, List<Rejection> rejections) {
+        if (task.isDurable()) {
+            rejections.add(new Rejection(task, reason + ", request was left in the outbox for the next startup",
+                    true));
+        } else {
+            rejections.add(new Rejection(task, reason + " and the request is not saved on disk", false));
+        }
+    }
+
+    // Most important class first, skipping classes that already use all of their workers
+    private Queued pollRunnable() {
+        for (Lane lane : lanes) {
+            if (lane.running < lane.maxWorkers && !lane.queue.isEmpty()) {
+                queued--;
+                return lane.queue.poll();
+            }
+        }
+        return null;
+    }
+
+    private boolean hasRunnable() {
+        for (Lane lane : lanes) {
+            if (lane.running < lane.maxWorkers && !lane.queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queued;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public synchronized int getActiveWorkerCount() {
+        int running = 0;
+        for (Lane lane : lanes) {
+            running += lane.running;
+        }
+        return running;
+    }
+
+    public synchronized int getQueueDepth(TrafficClass trafficClass) {
+        return lanes[trafficClass.ordinal()].queue.size();
+    }
+
+    public int getQueueCapacity(TrafficClass trafficClass) {
+        return lanes[trafficClass.ordinal()].maxQueued;
+    }
+
+    public synchronized int getActiveWorkerCount(TrafficClass trafficClass) {
+        return lanes[trafficClass.ordinal()].running;
+    }
+
+    public int getMaxWorkers(TrafficClass trafficClass) {
+        return lanes[trafficClass.ordinal()].maxWorkers;
+    }
+
+    // Spilled requests aren't counted here, they are still in the outbox
+    public long getRejectedCount(TrafficClass trafficClass) {
+        return lanes[trafficClass.ordinal()].rejected.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    // Requests already queued are still sent, new ones are rejected
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private static class Lane {
+        final ArrayDeque<Queued> queue = new ArrayDeque<>();
+        final int maxWorkers;
+        final int maxQueued;
+        final AtomicLong rejected = new AtomicLong();
+        int running;
+
+        Lane(int maxWorkers, int maxQueued) {
+            this.maxWorkers = maxWorkers;
+            this.maxQueued = maxQueued;
+        }
+    }
+
+    private static class Queued {
+        final PrioritizedTask task;
+        final long sequence; // for DropOldest across classes
+
+        Queued(PrioritizedTask task, long sequence) {
+            this.task = task;
+            this.sequence = sequence;
+        }
+    }
+
+    private static class Rejection {
+        final PrioritizedTask task;
+        final String reason;
+        final boolean spilled;
+
+        Rejection(PrioritizedTask task, String reason, boolean spilled) {
+            this.task = task;
+            this.reason = reason;
+            this.spilled = spilled;
+        }
+    }
+}
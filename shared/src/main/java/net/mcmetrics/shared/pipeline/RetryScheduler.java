@@ -0,0 +1,152 @@
+package net.mcmetrics.shared.pipeline;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Puts failed requests back on the request executor after an exponential backoff with full jitter.
+ * Waiting happens on the scheduler, so a request waiting for its retry doesn't hold a worker thread.
+ *
+ * Each endpoint has a retry budget that refills by a fraction of a token per request, so during a
+ * long outage retries add at most that fraction on top of the normal traffic. A Retry-After from
+ * the API is honoured both for the retry and for new requests to the same endpoint.
+ */
+public class RetryScheduler {
+    private static final double MAX_BUDGET = 10;
+    private static final long MAX_RETRY_AFTER_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<PrioritizedTask> submitter;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final double budgetRatio;
+
+    private final Map<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+    private final Map<String, Long> blockedUntil = new ConcurrentHashMap<>();
+    private final Set<PrioritizedTask> waiting = ConcurrentHashMap.newKeySet();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong exhaustedCount = new AtomicLong();
+    private volatile boolean closed;
+
+    public RetryScheduler(ScheduledExecutorService scheduler, Consumer<PrioritizedTask> submitter, int maxAttempts,
+            long baseDelayMs, long maxDelayMs, double budgetRatio) {
+        this.scheduler = scheduler;
+        this.submitter = submitter;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = Math.max(1, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+        this.budgetRatio = budgetRatio;
+    }
+
+    // Submits a first attempt, holding it back while the endpoint is under a Retry-After
+    public void submit(String endpoint, PrioritizedTask task) {
+        budgets.computeIfAbsent(endpoint, key -> new RetryBudget()).deposit(budgetRatio);
+
+        long delay = getBlockedDelayMs(endpoint);
+        if (delay > 0 && !closed) {
+            schedule(task, delay);
+        } else {
+            submitter.accept(task);
+        }
+    }
+
+    /**
+     * Schedules another attempt of a failed request.
+     *
+     * @param attempt      the attempt that just failed, starting at 1
+     * @param retryAfterMs the API's Retry-After in milliseconds, or -1 if it sent none
+     * @return false if the request should fail instead: out of attempts, out of budget or shutting down
+     */
+    public boolean retry(String endpoint, PrioritizedTask task, int attempt, long retryAfterMs) {
+        if (retryAfterMs > 0) {
+            long until = System.currentTimeMillis() + Math.min(retryAfterMs, MAX_RETRY_AFTER_MS);
+            blockedUntil.merge(endpoint, until, Math::max);
+        }
+
+        if (closed || attempt >= maxAttempts
+                || !budgets.computeIfAbsent(endpoint, key -> new RetryBudget()).withdraw()) {
+            exhaustedCount.incrementAndGet();
+            return false;
+        }
+
+        // Full jitter: anywhere between 0 and the exponential backoff, so clients don't retry in lockstep
+        long backoff = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 30));
+        long delay = ThreadLocalRandom.current().nextLong(backoff + 1);
+        delay = Math.max(delay, getBlockedDelayMs(endpoint));
+
+        retryCount.incrementAndGet();
+        schedule(task, delay);
+        return true;
+    }
+
+    public long getBlockedDelayMs(String endpoint) {
+        Long until = blockedUntil.get(endpoint);
+        if (until == null) {
+            return 0;
+        }
+        long delay = until - System.currentTimeMillis();
+        if (delay <= 0) {
+            blockedUntil.remove(endpoint, until);
+            return 0;
+        }
+        return delay;
+    }
+
+    public int getWaitingCount() {
+        return waiting.size();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    // Requests that failed for good because they ran out of attempts or budget
+    public long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+
+    // Fails everything still waiting for its next attempt
+    public void close() {
+        closed = true;
+        for (PrioritizedTask task : waiting) {
+            if (waiting.remove(task)) {
+                task.reject("MCMetrics API is shutting down");
+            }
+        }
+    }
+
+    private void schedule(PrioritizedTask task, long delayMs) {
+        waiting.add(task);
+        try {
+            scheduler.schedule(() -> {
+                if (waiting.remove(task)) {
+                    submitter.accept(task);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            if (waiting.remove(task)) {
+                task.reject("MCMetrics API is shutting down");
+            }
+        }
+    }
+
+    private static class RetryBudget {
+        private double tokens = MAX_BUDGET;
+
+        synchronized void deposit(double amount) {
+            tokens = Math.min(MAX_BUDGET, tokens + amount);
+        }
+
+        synchronized boolean withdraw() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
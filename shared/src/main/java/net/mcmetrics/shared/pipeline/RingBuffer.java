@@ -0,0 +1,67 @@
+package net.mcmetrics.shared.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded queue for many producing threads and a single consuming one. Producers never block or
+ * allocate, {@link #offer} simply fails when the buffer is full, which makes it safe to feed from
+ * latency-sensitive threads such as a logging call or the server tick.
+ */
+public class RingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // next sequence a producer claims
+    private final AtomicLong head = new AtomicLong(); // next sequence the consumer reads
+
+    // capacity is rounded up to a power of two
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    // Safe from any thread; false if the buffer is full
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        slots.lazySet((int) sequence & mask, element);
+        return true;
+    }
+
+    // Consumer thread only; null if empty or the next element is still being published
+    public E poll() {
+        long sequence = head.get();
+        int index = (int) sequence & mask;
+        E element = slots.get(index);
+        if (element == null) {
+            return null;
+        }
+
+        slots.lazySet(index, null);
+        head.lazySet(sequence + 1);
+        return element;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+}
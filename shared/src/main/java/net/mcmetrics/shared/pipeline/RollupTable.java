@@ -0,0 +1,178 @@
+package net.mcmetrics.shared.pipeline;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Counts occurrences of custom events per (player, event type, selected metadata values) so that
+ * high-frequency events can be shipped as one rollup per key and interval instead of one upload each.
+ *
+ * Keys are looked up by a 64-bit hash in a fixed-size open-addressed table; counting an event that
+ * has been seen before in the interval is a hash, a short probe and one atomic increment, and only
+ * the first occurrence of a key allocates. There are two generations of the table: {@link #rotate}
+ * makes the idle one active and drains the other, which gets cleared on the next rotation once no
+ * thread can still be counting into it.
+ */
+public class RollupTable {
+    private static final int PROBES = 16;
+
+    private volatile Generation active;
+    private Generation retired; // rotating thread only
+    private final AtomicLong overflowed = new AtomicLong();
+
+    // capacity is rounded up to a power of two
+    public RollupTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(PROBES, capacity) - 1) << 1;
+        this.active = new Generation(size);
+        this.retired = new Generation(size);
+    }
+
+    /**
+     * Safe from any thread. The values array is kept as it is if this is the first occurrence of the
+     * key, so it must not be changed afterwards.
+     *
+     * @param names  metadata keys the rollup is split by, the same array for every call of an event
+     * @param values their values for this occurrence, in the same order
+     * @return false if the table is full and the occurrence wasn't counted
+     */
+    public boolean increment(UUID player, String eventType, String[] names, Object[] values) {
+        long hash = hash(player, eventType, values);
+        Generation generation = active;
+        int mask = generation.hashes.length() - 1;
+        int start = (int) hash & mask;
+        for (int i = 0; i < PROBES; i++) {
+            int index = (start + i) & mask;
+            long slotHash = generation.hashes.get(index);
+            if (slotHash == 0) {
+                if (generation.hashes.compareAndSet(index, 0, hash)) {
+                    generation.keys.set(index, new Key(player, eventType, names, values));
+                    generation.counts.incrementAndGet(index);
+                    return true;
+                }
+                slotHash = generation.hashes.get(index);
+            }
+            if (slotHash == hash) {
+                // Null while another thread is still publishing the key it just claimed
+                Key key = generation.keys.get(index);
+                if (key == null || key.matches(player, eventType, values)) {
+                    generation.counts.incrementAndGet(index);
+                    return true;
+                }
+            }
+        }
+        overflowed.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Starts a new interval and hands every key counted in the previous one to the sink, together
+     * with its count. Must always be called from the same thread.
+     */
+    public void rotate(ObjLongConsumer<Key> sink) {
+        // Stragglers that were still counting into it when it was retired
+        drain(retired, sink);
+        retired.clear();
+
+        Generation finished = active;
+        active = retired;
+        retired = finished;
+        drain(finished, sink);
+    }
+
+    // Occurrences that weren't counted because the table was full, since startup
+    public long getOverflowCount() {
+        return overflowed.get();
+    }
+
+    public int capacity() {
+        return active.hashes.length();
+    }
+
+    private static void drain(Generation generation, ObjLongConsumer<Key> sink) {
+        for (int i = 0; i < generation.hashes.length(); i++) {
+            Key key = generation.keys.get(i);
+            if (key == null) {
+                continue;
+            }
+            long count = generation.counts.getAndSet(i, 0);
+            if (count > 0) {
+                sink.accept(key, count);
+            }
+        }
+    }
+
+    private static long hash(UUID player, String eventType, Object[] values) {
+        long hash = player.getMostSignificantBits() * 31 + player.getLeastSignificantBits();
+        hash = hash * 31 + eventType.hashCode();
+        for (Object value : values) {
+            hash = hash * 31 + (value != null ? value.hashCode() : 0);
+        }
+        hash = TokenBucketTable.mix(hash);
+        // Zero marks an empty slot
+        return hash != 0 ? hash : 1;
+    }
+
+    private static class Generation {
+        final AtomicLongArray hashes;
+        final AtomicLongArray counts;
+        final AtomicReferenceArray<Key> keys;
+
+        Generation(int size) {
+            this.hashes = new AtomicLongArray(size);
+            this.counts = new AtomicLongArray(size);
+            this.keys = new AtomicReferenceArray<>(size);
+        }
+
+        void clear() {
+            for (int i = 0; i < hashes.length(); i++) {
+                keys.set(i, null);
+                counts.set(i, 0);
+                hashes.set(i, 0);
+            }
+        }
+    }
+
+    public static final class Key {
+        private final UUID player;
+        private final String eventType;
+        private final String[] names;
+        private final Object[] values;
+
+        Key(UUID player, String eventType, String[] names, Object[] values) {
+            this.player = player;
+            this.eventType = eventType;
+            this.names = names;
+            this.values = values;
+        }
+
+        boolean matches(UUID player, String eventType, Object[] values) {
+            return this.player.equals(player) && this.eventType.equals(eventType)
+                    && Arrays.equals(this.values, values);
+        }
+
+        public UUID getPlayer() {
+            return player;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        public String[] getNames() {
+            return names;
+        }
+
+        public Object[] getValues() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return eventType + " " + player + " " + Arrays.toString(values);
+        }
+    }
+}
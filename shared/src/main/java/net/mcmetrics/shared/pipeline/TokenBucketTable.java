@@ -0,0 +1,109 @@
+package net.mcmetrics.shared.pipeline;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token buckets for an open-ended set of keys (players, event types) in a fixed-size table, so a
+ * flood of new keys can't grow memory. Each bucket is a single long - a 16-bit tag of the key and
+ * the time its bucket will be full again (GCRA) - updated with one compare-and-set, so taking a
+ * token never locks or allocates.
+ *
+ * A key lives in one of a few slots next to its hash. When those are all taken by other keys, the
+ * one whose bucket refills soonest is replaced, which at worst hands a fresh burst to a key that
+ * comes back after being pushed out.
+ */
+public class TokenBucketTable {
+    private static final int PROBES = 4;
+    private static final int TIME_BITS = 48; // microseconds, almost 9 years of uptime
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final long intervalMicros; // time to earn one token
+    private final long toleranceMicros; // how far ahead of time a full burst may run
+
+    // capacity is rounded up to a power of two
+    public TokenBucketTable(int capacity, int perSecond, int burst) {
+        int size = Integer.highestOneBit(Math.max(PROBES, capacity) - 1) << 1;
+        this.slots = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.intervalMicros = Math.max(1, 1_000_000L / Math.max(1, perSecond));
+        this.toleranceMicros = intervalMicros * Math.max(1, burst);
+    }
+
+    /**
+     * @param key     hash of the key, see {@link #mix}
+     * @param nowMicros a monotonic clock in microseconds, starting near zero
+     * @return false if the key's bucket is empty
+     */
+    public boolean tryAcquire(long key, long nowMicros) {
+        long tag = key >>> TIME_BITS;
+        int start = (int) key & mask;
+        while (true) {
+            int index = -1;
+            long current = 0;
+            long fullAt = 0; // a key that isn't in the table starts with a full bucket
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < PROBES; i++) {
+                int probe = (start + i) & mask;
+                long value = slots.get(probe);
+                if (value >>> TIME_BITS == tag) {
+                    index = probe;
+                    current = value;
+                    fullAt = value & TIME_MASK;
+                    break;
+                }
+                if ((value & TIME_MASK) < oldest) {
+                    index = probe;
+                    current = value;
+                    oldest = value & TIME_MASK;
+                }
+            }
+
+            long next = Math.max(fullAt, nowMicros) + intervalMicros;
+            if (next - nowMicros > toleranceMicros) {
+                return false;
+            }
+            if (slots.compareAndSet(index, current, tag << TIME_BITS | (next & TIME_MASK))) {
+                return true;
+            }
+            // Another thread took a token from this slot first, look again
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire}, when the event was dropped for another reason.
+     * Does nothing if the key has been pushed out of the table since.
+     */
+    public void refund(long key) {
+        long tag = key >>> TIME_BITS;
+        int start = (int) key & mask;
+        for (int i = 0; i < PROBES; i++) {
+            int probe = (start + i) & mask;
+            while (true) {
+                long value = slots.get(probe);
+                if (value >>> TIME_BITS != tag) {
+                    break;
+                }
+                long fullAt = Math.max(0, (value & TIME_MASK) - intervalMicros);
+                if (slots.compareAndSet(probe, value, tag << TIME_BITS | fullAt)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    // Spreads the bits of a hash, the top ones become the tag and the bottom ones the slot
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
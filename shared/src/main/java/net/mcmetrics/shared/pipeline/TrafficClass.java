@@ -0,0 +1,51 @@
+package net.mcmetrics.shared.pipeline;
+
+/**
+ * Kinds of traffic sent to the ingest API, ordered from most to least important.
+ * When requests have to be shed, the lowest class goes first.
+ *
+ * Each class may only use a share of the workers and of the request queue by default, so a flood
+ * of low-value traffic always leaves room for payments and sessions.
+ */
+public enum TrafficClass {
+    Payment("Payment", "payment", 1.0, 1.0),
+    Session("Session", "session", 1.0, 1.0),
+    ABTest("A/B Test", "ab-test", 0.5, 0.1),
+    CustomEvent("Custom Event", "custom-event", 0.75, 0.5),
+    ChatMessage("Chat Message", "chat-message", 0.5, 0.25),
+    ServerPing("Server Ping", "server-ping", 0.25, 0.05);
+
+    private final String value;
+    private final String configKey;
+    private final double workerShare;
+    private final double queueShare;
+
+    TrafficClass(String value, String configKey, double workerShare, double queueShare) {
+        this.value = value;
+        this.configKey = configKey;
+        this.workerShare = workerShare;
+        this.queueShare = queueShare;
+    }
+
+    // Name of the class under api.traffic-classes in config.yml
+    public String getConfigKey() {
+        return configKey;
+    }
+
+    public int getDefaultMaxWorkers(int workers) {
+        return Math.max(1, (int) Math.ceil(workers * workerShare));
+    }
+
+    public int getDefaultMaxQueued(int queueCapacity) {
+        return Math.max(1, (int) (queueCapacity * queueShare));
+    }
+
+    public boolean isLessImportantThan(TrafficClass other) {
+        return ordinal() > other.ordinal();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
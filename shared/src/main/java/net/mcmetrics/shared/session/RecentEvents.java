@@ -0,0 +1,46 @@
+package net.mcmetrics.shared.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last few events of a session, for display. Adding is lock-free and safe from any thread, and
+ * once the ring is full each new event overwrites the oldest, so a long session can't grow it.
+ */
+public class RecentEvents<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong added = new AtomicLong();
+
+    // capacity is rounded up to a power of two
+    public RecentEvents(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public void add(E event) {
+        slots.set((int) added.getAndIncrement() & mask, event);
+    }
+
+    // Oldest first. An event added while copying may show up in place of the one it overwrote.
+    public List<E> snapshot() {
+        long end = added.get();
+        long start = Math.max(0, end - slots.length());
+        List<E> events = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            E event = slots.get((int) sequence & mask);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    // Every event ever added, including those that have been overwritten since
+    public long getTotalCount() {
+        return added.get();
+    }
+}
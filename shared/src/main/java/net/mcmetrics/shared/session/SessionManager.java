@@ -0,0 +1,88 @@
+package net.mcmetrics.shared.session;
+
+import net.mcmetrics.shared.models.CustomEvent;
+import net.mcmetrics.shared.models.Payment;
+import net.mcmetrics.shared.models.Session;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessions of the players currently online, shared by the Bukkit, BungeeCord and Velocity plugins.
+ * One {@link SessionState} per player, so starting and ending a session is a single map operation.
+ */
+public class SessionManager {
+    private final Map<UUID, SessionState> sessions = new ConcurrentHashMap<>();
+
+    public void startSession(UUID playerId, Session session) {
+        sessions.put(playerId, new SessionState(session));
+    }
+
+    public Session getSession(UUID playerId) {
+        SessionState state = sessions.get(playerId);
+        return state != null ? state.getSession() : null;
+    }
+
+    // Null if the player has no session
+    public SessionState getState(UUID playerId) {
+        return sessions.get(playerId);
+    }
+
+    public Session endSession(UUID playerId) {
+        SessionState state = sessions.remove(playerId);
+        return state != null ? state.finish() : null;
+    }
+
+    public List<Session> endAllSessions() {
+        List<Session> endedSessions = new ArrayList<>(sessions.size());
+        for (UUID playerId : new ArrayList<>(sessions.keySet())) {
+            Session session = endSession(playerId);
+            if (session != null) {
+                endedSessions.add(session);
+            }
+        }
+        return endedSessions;
+    }
+
+    public int getActiveSessionCount() {
+        return sessions.size();
+    }
+
+    // Events of players without a session, e.g. exempt players, aren't kept
+    public void addCustomEvent(UUID playerId, CustomEvent event) {
+        SessionState state = sessions.get(playerId);
+        if (state != null) {
+            state.addCustomEvent(event);
+        }
+    }
+
+    public void countCustomEvent(UUID playerId, String eventType) {
+        SessionState state = sessions.get(playerId);
+        if (state != null) {
+            state.countCustomEvent(eventType);
+        }
+    }
+
+    public void addPayment(UUID playerId, Payment payment) {
+        SessionState state = sessions.get(playerId);
+        if (state != null) {
+            state.addPayment(payment);
+        }
+    }
+
+    public List<CustomEvent> getSessionCustomEvents(UUID playerId) {
+        SessionState state = sessions.get(playerId);
+        return state != null ? state.getRecentCustomEvents() : Collections.emptyList();
+    }
+
+    public List<Payment> getSessionPayments(UUID playerId) {
+        SessionState state = sessions.get(playerId);
+        return state != null ? state.getRecentPayments() : Collections.emptyList();
+    }
+
+    // Counted as the events come in, so this only copies one counter per event type
+    public Map<String, Long> getGroupedCustomEvents(UUID playerId) {
+        SessionState state = sessions.get(playerId);
+        return state != null ? state.getCustomEventCounts() : Collections.emptyMap();
+    }
+}
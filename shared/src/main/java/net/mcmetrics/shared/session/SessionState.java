@@ -0,0 +1,137 @@
+package net.mcmetrics.shared.session;
+
+import net.mcmetrics.shared.models.ABTestExposure;
+import net.mcmetrics.shared.models.CustomEvent;
+import net.mcmetrics.shared.models.Payment;
+import net.mcmetrics.shared.models.Session;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Everything kept about one player's session while they are online: the session that is uploaded
+ * when they quit, the A/B test variants they were shown, and their most recent custom events and
+ * payments. Events and exposures can be added from any thread without locking.
+ *
+ * Custom events are counted per type as they are added, so a session's totals never require going
+ * over its events again, and only the most recent events themselves are kept. However long a player
+ * stays online, the state doesn't grow beyond those caps. The counters are two fixed arrays, types
+ * and counts side by side, so counting an event never allocates.
+ */
+public class SessionState {
+    private static final int RECENT_CUSTOM_EVENTS = 256;
+    private static final int RECENT_PAYMENTS = 32;
+    // Event types are counted separately up to this many, anything beyond shares the last counter
+    private static final int MAX_COUNTED_TYPES = 64;
+    private static final int OTHER_SLOT = MAX_COUNTED_TYPES - 1;
+    private static final String OTHER_TYPES = "other";
+
+    private final Session session;
+    // Keyed by test and variant, a variant shown again is only recorded once
+    private final Map<String, ABTestExposure> exposures = new ConcurrentHashMap<>();
+    private final RecentEvents<CustomEvent> customEvents = new RecentEvents<>(RECENT_CUSTOM_EVENTS);
+    private final RecentEvents<Payment> payments = new RecentEvents<>(RECENT_PAYMENTS);
+    // A slot's type is set once, by whichever thread claims it first
+    private final AtomicReferenceArray<String> countedTypes = new AtomicReferenceArray<>(OTHER_SLOT);
+    private final AtomicLongArray customEventCounts = new AtomicLongArray(MAX_COUNTED_TYPES);
+    private final AtomicLong customEventTotal = new AtomicLong();
+
+    public SessionState(Session session) {
+        this.session = session;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public void addExposure(ABTestExposure exposure) {
+        exposures.putIfAbsent(exposure.ab_test_id + ':' + exposure.variant_name, exposure);
+    }
+
+    public List<ABTestExposure> getExposures() {
+        return new ArrayList<>(exposures.values());
+    }
+
+    public void addCustomEvent(CustomEvent event) {
+        customEvents.add(event);
+        countCustomEvent(event.event_type);
+    }
+
+    // For events that are only counted, like aggregated ones, without keeping the event itself
+    public void countCustomEvent(String eventType) {
+        customEventTotal.incrementAndGet();
+        customEventCounts.incrementAndGet(slotFor(eventType != null ? eventType : "custom_event"));
+    }
+
+    public List<CustomEvent> getRecentCustomEvents() {
+        return customEvents.snapshot();
+    }
+
+    public long getCustomEventCount() {
+        return customEventTotal.get();
+    }
+
+    // Custom events per type this session, including those no longer among the recent ones
+    public Map<String, Long> getCustomEventCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int slot = 0; slot < OTHER_SLOT; slot++) {
+            String type = countedTypes.get(slot);
+            if (type == null) {
+                break;
+            }
+            counts.merge(type, customEventCounts.get(slot), Long::sum);
+        }
+        long other = customEventCounts.get(OTHER_SLOT);
+        if (other > 0) {
+            counts.merge(OTHER_TYPES, other, Long::sum);
+        }
+        return counts;
+    }
+
+    public void addPayment(Payment payment) {
+        payments.add(payment);
+    }
+
+    public List<Payment> getRecentPayments() {
+        return payments.snapshot();
+    }
+
+    public long getPaymentCount() {
+        return payments.getTotalCount();
+    }
+
+    // Types fill the slots from the front, so the first empty one ends the search
+    private int slotFor(String eventType) {
+        for (int slot = 0; slot < OTHER_SLOT; slot++) {
+            String type = countedTypes.get(slot);
+            if (type == null) {
+                if (countedTypes.compareAndSet(slot, null, eventType)) {
+                    return slot;
+                }
+                type = countedTypes.get(slot);
+            }
+            if (type.equals(eventType)) {
+                return slot;
+            }
+        }
+        return OTHER_SLOT;
+    }
+
+    // The session as it is uploaded, with the exposures collected while it was running
+    Session finish() {
+        if (!exposures.isEmpty()) {
+            List<ABTestExposure> shown = session.ab_test_exposures != null
+                    ? new ArrayList<>(session.ab_test_exposures)
+                    : new ArrayList<>();
+            shown.addAll(exposures.values());
+            session.ab_test_exposures = shown;
+        }
+        return session;
+    }
+}
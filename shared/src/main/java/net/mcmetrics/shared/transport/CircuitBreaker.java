@@ -0,0 +1,176 @@
+package net.mcmetrics.shared.transport;
+
+import java.util.function.Consumer;
+
+/**
+ * Stops requests to the ingest API while it looks down. The breaker opens after a run of
+ * consecutive failures, or when the failure rate over the last requests gets too high. After
+ * the open period a single probe request is let through (half-open); its outcome decides whether
+ * the breaker closes again or stays open for another period.
+ */
+public class CircuitBreaker {
+    private static final int WINDOW_SIZE = 50;
+
+    public enum State {
+        Closed("closed"),
+        Open("open"),
+        HalfOpen("half-open");
+
+        private final String value;
+
+        State(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    private final int failureThreshold;
+    private final double failureRateThreshold;
+    private final int minimumRequests;
+    private final long openDurationMs;
+    private volatile Consumer<State> listener = state -> {
+    };
+
+    // Outcomes of the last WINDOW_SIZE requests, true for a failure
+    private final boolean[] window = new boolean[WINDOW_SIZE];
+    private int windowPosition;
+    private int windowCount;
+    private int windowFailures;
+
+    private volatile State state = State.Closed;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean probeInFlight;
+    private volatile long tripCount;
+
+    public CircuitBreaker(int failureThreshold, double failureRateThreshold, int minimumRequests,
+            long openDurationMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumRequests = Math.max(1, Math.min(WINDOW_SIZE, minimumRequests));
+        this.openDurationMs = Math.max(1, openDurationMs);
+    }
+
+    // Called with the new state after every transition, outside the breaker's lock
+    public void setListener(Consumer<State> listener) {
+        this.listener = listener;
+    }
+
+    // Whether a request started now could be let through, without claiming the probe
+    public synchronized boolean isAcceptingRequests() {
+        switch (state) {
+            case Closed:
+                return true;
+            case Open:
+                return System.currentTimeMillis() >= openUntil;
+            default:
+                return !probeInFlight;
+        }
+    }
+
+    // Claims permission to send a request; in half-open state only the probe gets it
+    public boolean tryAcquire() {
+        State changedTo = null;
+        boolean acquired;
+        synchronized (this) {
+            if (state == State.Open && System.currentTimeMillis() >= openUntil) {
+                state = State.HalfOpen;
+                probeInFlight = false;
+                changedTo = state;
+            }
+
+            if (state == State.Closed) {
+                acquired = true;
+            } else if (state == State.HalfOpen && !probeInFlight) {
+                probeInFlight = true;
+                acquired = true;
+            } else {
+                acquired = false;
+            }
+        }
+        notifyListener(changedTo);
+        return acquired;
+    }
+
+    public void onSuccess() {
+        State changedTo = null;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            if (state == State.HalfOpen) {
+                state = State.Closed;
+                probeInFlight = false;
+                resetWindow();
+                changedTo = state;
+            } else {
+                record(false);
+            }
+        }
+        notifyListener(changedTo);
+    }
+
+    public void onFailure() {
+        State changedTo = null;
+        synchronized (this) {
+            consecutiveFailures++;
+            if (state == State.HalfOpen) {
+                changedTo = trip();
+            } else if (state == State.Closed) {
+                record(true);
+                if (consecutiveFailures >= failureThreshold || (windowCount >= minimumRequests
+                        && windowFailures >= failureRateThreshold * windowCount)) {
+                    changedTo = trip();
+                }
+            }
+        }
+        notifyListener(changedTo);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getTripCount() {
+        return tripCount;
+    }
+
+    public long getOpenDurationMs() {
+        return openDurationMs;
+    }
+
+    private State trip() {
+        state = State.Open;
+        openUntil = System.currentTimeMillis() + openDurationMs;
+        probeInFlight = false;
+        tripCount++;
+        resetWindow();
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == WINDOW_SIZE && window[windowPosition]) {
+            windowFailures--;
+        }
+        window[windowPosition] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowPosition = (windowPosition + 1) % WINDOW_SIZE;
+        windowCount = Math.min(WINDOW_SIZE, windowCount + 1);
+    }
+
+    private void resetWindow() {
+        windowPosition = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    private void notifyListener(State changedTo) {
+        if (changedTo != null) {
+            listener.accept(changedTo);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package net.mcmetrics.shared.transport;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Wraps another transport with a {@link CircuitBreaker}. Network errors and 5xx responses count as
+ * failures; while the breaker is open requests fail fast with {@link CircuitOpenException}.
+ */
+public class CircuitBreakerTransport implements HttpTransport {
+    private final HttpTransport delegate;
+    private final CircuitBreaker circuitBreaker;
+
+    public CircuitBreakerTransport(HttpTransport delegate, CircuitBreaker circuitBreaker) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public HttpResponse execute(String method, String path, Map<String, String> headers, RequestBody body,
+            boolean discardResponseBody) throws IOException {
+        if (!circuitBreaker.tryAcquire()) {
+            throw new CircuitOpenException();
+        }
+
+        HttpResponse response;
+        try {
+            response = delegate.execute(method, path, headers, body, discardResponseBody);
+        } catch (IOException | RuntimeException e) {
+            circuitBreaker.onFailure();
+            throw e;
+        }
+
+        if (response.getStatusCode() >= 500) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+        return response;
+    }
+
+    @Override
+    public void warmUp(int connections) {
+        delegate.warmUp(connections);
+    }
+
+    @Override
+    public long getPoolHits() {
+        return delegate.getPoolHits();
+    }
+
+    @Override
+    public long getPoolMisses() {
+        return delegate.getPoolMisses();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
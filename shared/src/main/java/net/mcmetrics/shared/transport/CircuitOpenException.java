@@ -0,0 +1,14 @@
+package net.mcmetrics.shared.transport;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link CircuitBreakerTransport} when a request is refused without being attempted.
+ */
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException() {
+        super("MCMetrics API is unreachable, requests are paused");
+    }
+}
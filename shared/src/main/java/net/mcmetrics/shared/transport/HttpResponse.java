@@ -0,0 +1,64 @@
+package net.mcmetrics.shared.transport;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+public class HttpResponse {
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final long connectNanos;
+    private final long timeToFirstByteNanos;
+    private final long totalNanos;
+
+    public HttpResponse(int statusCode, Map<String, String> headers, byte[] body) {
+        this(statusCode, headers, body, -1, -1, -1);
+    }
+
+    public HttpResponse(int statusCode, Map<String, String> headers, byte[] body, long connectNanos,
+            long timeToFirstByteNanos, long totalNanos) {
+        this.statusCode = statusCode;
+        this.headers = headers != null ? headers : Collections.emptyMap();
+        this.body = body != null ? body : new byte[0];
+        this.connectNanos = connectNanos;
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    // Header names are stored lower-case
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    // Time spent opening the connection, or -1 if an idle one was reused
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    // From sending the request to reading the status line, or -1 if unknown
+    public long getTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+
+    // Whole exchange including waiting for a connection, or -1 if unknown
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,50 @@
+package net.mcmetrics.shared.transport;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The layer MCMetricsAPI uses to talk to the ingest API. The default implementation is
+ * {@link PooledHttpTransport}, but anything that can turn a request into an {@link HttpResponse}
+ * can be plugged in (e.g. for testing against a local server).
+ */
+public interface HttpTransport {
+
+    /**
+     * Executes a single request against the ingest API.
+     *
+     * @param method  HTTP method, e.g. "GET" or "POST"
+     * @param path    path relative to the transport's base URL, e.g. "/insert/session"
+     * @param headers extra request headers
+     * @param body    request body, or null for none
+     * @param discardResponseBody skip the body of successful responses instead of reading it into memory;
+     *                            error bodies are always kept
+     */
+    HttpResponse execute(String method, String path, Map<String, String> headers, RequestBody body,
+            boolean discardResponseBody) throws IOException;
+
+    /**
+     * Opens up to the given number of connections ahead of time so the first requests
+     * don't pay for the TCP and TLS handshakes.
+     */
+    void warmUp(int connections);
+
+    long getPoolHits();
+
+    long getPoolMisses();
+
+    void close();
+
+    /**
+     * The transport for the given base URL: {@link PooledHttpTransport}, unless the JVM is configured
+     * to go through a proxy, which only {@link UrlConnectionTransport} honours.
+     */
+    static HttpTransport forBaseUrl(String baseUrl) {
+        String proxyProperty = baseUrl.regionMatches(true, 0, "https:", 0, 6) ? "https.proxyHost" : "http.proxyHost";
+        String proxyHost = System.getProperty(proxyProperty);
+        if ((proxyHost != null && !proxyHost.isEmpty()) || Boolean.getBoolean("java.net.useSystemProxies")) {
+            return new UrlConnectionTransport(baseUrl);
+        }
+        return new PooledHttpTransport(baseUrl);
+    }
+}
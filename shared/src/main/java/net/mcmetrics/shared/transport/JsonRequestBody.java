@@ -0,0 +1,189 @@
+package net.mcmetrics.shared.transport;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+
+/**
+ * Serializes an object with Gson directly into bytes, without building a String first. Bodies up to
+ * {@link #MAX_BUFFERED_BYTES} are serialized into a buffer that is reused by the calling thread,
+ * so the Content-Length is known; larger ones are streamed to the connection with chunked encoding.
+ */
+public class JsonRequestBody implements RequestBody {
+    public static final int MAX_BUFFERED_BYTES = 256 * 1024;
+
+    private static final ThreadLocal<BoundedBuffer> BUFFERS = ThreadLocal.withInitial(BoundedBuffer::new);
+
+    private final Gson gson;
+    private final Object data;
+    private BoundedBuffer buffered; // set once serialized into this thread's buffer
+
+    public JsonRequestBody(Gson gson, Object data) {
+        this.gson = gson;
+        this.data = data;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        if (buffered != null) {
+            return buffered.size();
+        }
+
+        BoundedBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        try {
+            serialize(buffer.writer);
+            buffered = buffer;
+            return buffer.size();
+        } catch (BufferFullException e) {
+            // The writer may still hold half-encoded output, so start over with a fresh buffer next time
+            BUFFERS.remove();
+            return -1;
+        } catch (IOException | RuntimeException e) {
+            BUFFERS.remove();
+            throw e;
+        }
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (buffered != null) {
+            buffered.writeTo(out);
+        } else {
+            serialize(new Utf8Writer(out));
+        }
+    }
+
+    private void serialize(Writer writer) throws IOException {
+        JsonWriter jsonWriter = gson.newJsonWriter(writer);
+        gson.toJson(data, data.getClass(), jsonWriter);
+        jsonWriter.flush();
+    }
+
+    // Growable byte buffer that refuses to grow past MAX_BUFFERED_BYTES, so one huge body doesn't pin memory
+    private static class BoundedBuffer extends ByteArrayOutputStream {
+        final Writer writer = new Utf8Writer(this);
+
+        BoundedBuffer() {
+            super(4096);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            ensureRoom(len);
+            super.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            ensureRoom(1);
+            super.write(b);
+        }
+
+        private void ensureRoom(int len) {
+            if (count + len > MAX_BUFFERED_BYTES) {
+                throw new BufferFullException();
+            }
+        }
+    }
+
+    /**
+     * UTF-8 encoder with its own reusable buffer. JsonWriter writes a few chars at a time, and
+     * OutputStreamWriter allocates a char[] or CharBuffer for every one of those writes.
+     */
+    private static class Utf8Writer extends Writer {
+        private final OutputStream out;
+        private final byte[] bytes = new byte[4096];
+        private int count;
+        private char highSurrogate; // first half of a pair split across writes, 0 if none
+
+        Utf8Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            encode((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                encode(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                encode(str.charAt(i));
+            }
+        }
+
+        private void encode(char c) throws IOException {
+            if (count > bytes.length - 4) {
+                drain();
+            }
+
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    bytes[count++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                    return;
+                }
+                bytes[count++] = '?'; // unpaired, replaced like OutputStreamWriter does
+                if (count > bytes.length - 4) {
+                    drain();
+                }
+            }
+
+            if (c < 0x80) {
+                bytes[count++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[count++] = (byte) (0xC0 | (c >> 6));
+                bytes[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                bytes[count++] = '?';
+            } else {
+                bytes[count++] = (byte) (0xE0 | (c >> 12));
+                bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        private void drain() throws IOException {
+            if (count > 0) {
+                out.write(bytes, 0, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            out.close();
+        }
+    }
+
+    private static class BufferFullException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BufferFullException() {
+            super(null, null, false, false);
+        }
+    }
+}
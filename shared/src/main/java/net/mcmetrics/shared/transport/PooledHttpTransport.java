@@ -0,0 +1,577 @@
+package net.mcmetrics.shared.transport;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal HTTP/1.1 client that keeps a bounded pool of persistent connections to a single host.
+ * Response bodies are always read to the end so the socket can be handed to the next request,
+ * which avoids a full TCP + TLS handshake per request.
+ *
+ * It only speaks to the ingest API directly: http(s).proxyHost is ignored, redirects are returned
+ * as they are, and responses must not be compressed (no Accept-Encoding is sent). Use
+ * {@link HttpTransport#forBaseUrl}, which picks {@link UrlConnectionTransport} when a proxy is set.
+ */
+public class PooledHttpTransport implements HttpTransport {
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 45000;
+    public static final int DEFAULT_READ_TIMEOUT_MS = 45000;
+    public static final long DEFAULT_KEEP_ALIVE_MS = 30000;
+
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final String USER_AGENT = "Java/" + System.getProperty("java.version");
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final boolean secure;
+    private final String host;
+    private final int port;
+    private final String basePath;
+    private final String hostHeader;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final long keepAliveMs;
+
+    // Bounds connections in use; a permit is held for the whole exchange
+    private final Semaphore permits;
+    private final int maxConnections;
+    // Idle connections hold no permit, so they are capped at maxConnections on their own
+    private final Deque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger(); // size() of the deque walks it
+
+    private final AtomicLong poolHits = new AtomicLong();
+    private final AtomicLong poolMisses = new AtomicLong();
+    private volatile boolean closed;
+
+    public PooledHttpTransport(String baseUrl) {
+        this(baseUrl, DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS,
+                DEFAULT_KEEP_ALIVE_MS);
+    }
+
+    public PooledHttpTransport(String baseUrl, int maxConnections, int connectTimeoutMs, int readTimeoutMs,
+            long keepAliveMs) {
+        URL url;
+        try {
+            url = new URL(baseUrl);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid base URL: " + baseUrl, e);
+        }
+
+        this.secure = "https".equalsIgnoreCase(url.getProtocol());
+        if (!secure && !"http".equalsIgnoreCase(url.getProtocol())) {
+            throw new IllegalArgumentException("Unsupported protocol: " + url.getProtocol());
+        }
+
+        this.host = url.getHost();
+        this.port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        this.hostHeader = url.getPort() != -1 ? host + ":" + port : host;
+        String path = url.getPath();
+        this.basePath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+
+        this.maxConnections = Math.max(1, maxConnections);
+        this.permits = new Semaphore(this.maxConnections);
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.keepAliveMs = keepAliveMs;
+    }
+
+    @Override
+    public HttpResponse execute(String method, String path, Map<String, String> headers, RequestBody body,
+            boolean discardResponseBody) throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(connectTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a free connection to " + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + host);
+        }
+
+        try {
+            PooledConnection connection = pollIdleConnection();
+            if (connection != null) {
+                poolHits.incrementAndGet();
+                try {
+                    return exchange(connection, true, method, path, headers, body, discardResponseBody,
+                            startNanos, -1);
+                } catch (StaleConnectionException e) {
+                    // The server closed the idle socket before we used it; retry once on a fresh one
+                    connection.close();
+                }
+            }
+
+            poolMisses.incrementAndGet();
+            long connectStart = System.nanoTime();
+            connection = openConnection();
+            return exchange(connection, false, method, path, headers, body, discardResponseBody,
+                    startNanos, System.nanoTime() - connectStart);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void warmUp(int connections) {
+        int target = Math.min(connections, maxConnections) - idleCount.get();
+        for (int i = 0; i < target && !closed; i++) {
+            if (!permits.tryAcquire()) {
+                return;
+            }
+            try {
+                PooledConnection connection = openConnection();
+                if (!offerIdle(connection, false)) {
+                    connection.close();
+                    return;
+                }
+            } catch (IOException e) {
+                // Not fatal, the connection will be opened on first use instead
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    @Override
+    public long getPoolHits() {
+        return poolHits.get();
+    }
+
+    @Override
+    public long getPoolMisses() {
+        return poolMisses.get();
+    }
+
+    public int getIdleConnectionCount() {
+        return idleCount.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = pollIdle()) != null) {
+            connection.close();
+        }
+    }
+
+    private PooledConnection pollIdleConnection() {
+        long now = System.currentTimeMillis();
+        PooledConnection connection;
+        while ((connection = pollIdle()) != null) {
+            if (connection.expiresAt > now && !connection.socket.isClosed()) {
+                return connection;
+            }
+            connection.close();
+        }
+        return null;
+    }
+
+    private void release(PooledConnection connection, boolean reusable) {
+        // Most recently used first, so the warmest sockets are picked again
+        if (!reusable || closed || !offerIdle(connection, true)) {
+            connection.close();
+        }
+    }
+
+    private PooledConnection pollIdle() {
+        PooledConnection connection = idleConnections.pollFirst();
+        if (connection != null) {
+            idleCount.decrementAndGet();
+        }
+        return connection;
+    }
+
+    // false when the pool already holds maxConnections idle sockets; the caller closes this one
+    private boolean offerIdle(PooledConnection connection, boolean first) {
+        if (idleCount.incrementAndGet() > maxConnections) {
+            idleCount.decrementAndGet();
+            return false;
+        }
+        if (first) {
+            idleConnections.offerFirst(connection);
+        } else {
+            idleConnections.offerLast(connection);
+        }
+        return true;
+    }
+
+    private PooledConnection openConnection() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            socket.setSoTimeout(readTimeoutMs);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+
+            if (secure) {
+                SSLSocket sslSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                        .createSocket(socket, host, port, true);
+                SSLParameters parameters = sslSocket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(parameters);
+                sslSocket.startHandshake();
+                socket = sslSocket;
+            }
+
+            return new PooledConnection(socket, System.currentTimeMillis() + keepAliveMs);
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            throw e;
+        }
+    }
+
+    // A pooled connection may have been closed by the server while idle, see staleOr
+    private HttpResponse exchange(PooledConnection connection, boolean pooled, String method, String path,
+            Map<String, String> headers, RequestBody body, boolean discardResponseBody, long startNanos,
+            long connectNanos) throws IOException {
+        boolean reusable = false;
+        long requestStart = System.nanoTime();
+        try {
+            try {
+                writeRequest(connection.out, method, path, headers, body);
+            } catch (IOException e) {
+                throw staleOr(e, pooled, false);
+            }
+
+            // The first byte is read on its own: until it arrives, a closed socket means the server
+            // never took the request, afterwards it may well have
+            int firstByte;
+            try {
+                connection.in.mark(1);
+                firstByte = connection.in.read();
+                connection.in.reset();
+            } catch (IOException e) {
+                throw staleOr(e, pooled, true);
+            }
+            if (firstByte == -1) {
+                throw staleOr(new EOFException("Connection closed before a response was received"), pooled, true);
+            }
+
+            String statusLine = readLine(connection.in);
+            long timeToFirstByte = System.nanoTime() - requestStart;
+
+            String[] statusParts = statusLine.split(" ", 3);
+            if (statusParts.length < 2 || !statusParts[0].startsWith("HTTP/")) {
+                throw new IOException("Malformed status line: " + statusLine);
+            }
+            int statusCode;
+            try {
+                statusCode = Integer.parseInt(statusParts[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed status line: " + statusLine);
+            }
+
+            Map<String, String> responseHeaders = readHeaders(connection.in);
+
+            // Successful responses to fire-and-forget requests are drained without being kept
+            ByteArrayOutputStream responseBody = discardResponseBody && statusCode / 100 == 2
+                    ? null
+                    : new ByteArrayOutputStream();
+            OutputStream bodySink = responseBody != null ? responseBody : DISCARD;
+            boolean bodyDelimited = true;
+            String transferEncoding = responseHeaders.get("transfer-encoding");
+            String contentLength = responseHeaders.get("content-length");
+
+            if ("HEAD".equals(method) || statusCode / 100 == 1 || statusCode == 204 || statusCode == 304) {
+                // No body
+            } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+                readChunkedBody(connection, bodySink);
+            } else if (contentLength != null) {
+                long length;
+                try {
+                    length = Long.parseLong(contentLength.trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed Content-Length: " + contentLength);
+                }
+                copyExactly(connection, bodySink, length);
+            } else {
+                // Body runs until the server closes the connection
+                copyToEnd(connection, bodySink);
+                bodyDelimited = false;
+            }
+
+            String connectionHeader = responseHeaders.get("connection");
+            boolean http11 = statusParts[0].equals("HTTP/1.1");
+            boolean keepAlive = connectionHeader == null
+                    ? http11
+                    : !connectionHeader.toLowerCase().contains("close")
+                            && (http11 || connectionHeader.toLowerCase().contains("keep-alive"));
+            reusable = bodyDelimited && keepAlive;
+            if (reusable) {
+                connection.expiresAt = System.currentTimeMillis()
+                        + keepAliveTimeout(responseHeaders.get("keep-alive"));
+            }
+
+            return new HttpResponse(statusCode, responseHeaders,
+                    responseBody != null ? responseBody.toByteArray() : null, connectNanos, timeToFirstByte,
+                    System.nanoTime() - startNanos);
+        } finally {
+            release(connection, reusable);
+        }
+    }
+
+    /**
+     * Requests aren't idempotent, so one is only sent again on a fresh connection when the pooled one
+     * was certainly dead before the server could have read it: the write failed, or the connection
+     * was closed or reset before any response byte. A read timeout means the server is slow, not that
+     * the socket was stale, and is rethrown as it is.
+     */
+    private static IOException staleOr(IOException e, boolean pooled, boolean written) {
+        if (!pooled || e instanceof SocketTimeoutException) {
+            return e;
+        }
+        if (!written || e instanceof EOFException
+                || (e instanceof SocketException && String.valueOf(e.getMessage()).contains("reset"))) {
+            return new StaleConnectionException(e);
+        }
+        return e;
+    }
+
+    // Written straight into the connection's buffered stream; the body is never copied into a byte[] first
+    private void writeRequest(OutputStream out, String method, String path, Map<String, String> headers,
+            RequestBody body) throws IOException {
+        long contentLength = body != null ? body.contentLength() : 0;
+
+        writeAscii(out, method);
+        out.write(' ');
+        writeAscii(out, basePath);
+        writeAscii(out, path);
+        writeAscii(out, " HTTP/1.1\r\n");
+        writeHeader(out, "Host", hostHeader);
+        writeHeader(out, "User-Agent", USER_AGENT);
+        writeHeader(out, "Connection", "keep-alive");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                writeHeader(out, header.getKey(), header.getValue());
+            }
+        }
+        if (body != null) {
+            if (contentLength >= 0) {
+                writeHeader(out, "Content-Length", Long.toString(contentLength));
+            } else {
+                writeHeader(out, "Transfer-Encoding", "chunked");
+            }
+        }
+        writeAscii(out, "\r\n");
+
+        if (body != null) {
+            if (contentLength >= 0) {
+                body.writeTo(out);
+            } else {
+                ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+                body.writeTo(chunked);
+                chunked.finish();
+            }
+        }
+        out.flush();
+    }
+
+    private static void writeHeader(OutputStream out, String name, String value) throws IOException {
+        writeAscii(out, name);
+        writeAscii(out, ": ");
+        writeAscii(out, value);
+        writeAscii(out, "\r\n");
+    }
+
+    private static void writeAscii(OutputStream out, String text) throws IOException {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    private Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase();
+            String value = line.substring(colon + 1).trim();
+            headers.merge(name, value, (a, b) -> a + ", " + b);
+        }
+        if (line == null) {
+            throw new EOFException("Connection closed while reading response headers");
+        }
+        return headers;
+    }
+
+    private void readChunkedBody(PooledConnection connection, OutputStream out) throws IOException {
+        InputStream in = connection.in;
+        while (true) {
+            String sizeLine = readLine(in);
+            if (sizeLine == null) {
+                throw new EOFException("Connection closed while reading chunked body");
+            }
+            int extension = sizeLine.indexOf(';');
+            String sizeText = (extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim();
+            long size;
+            try {
+                size = Long.parseLong(sizeText, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed chunk size: " + sizeLine);
+            }
+
+            if (size == 0) {
+                // Skip trailers
+                readHeaders(in);
+                return;
+            }
+
+            copyExactly(connection, out, size);
+            readLine(in); // CRLF after each chunk
+        }
+    }
+
+    private long keepAliveTimeout(String keepAliveHeader) {
+        if (keepAliveHeader != null) {
+            for (String part : keepAliveHeader.split(",")) {
+                String trimmed = part.trim();
+                if (trimmed.startsWith("timeout=")) {
+                    try {
+                        // Give up on the socket a little before the server does
+                        long serverTimeoutMs = Long.parseLong(trimmed.substring(8)) * 1000 - 1000;
+                        return Math.max(0, Math.min(keepAliveMs, serverTimeoutMs));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        return keepAliveMs;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Response line too long");
+            }
+            line.append((char) b);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private static void copyExactly(PooledConnection connection, OutputStream out, long length)
+            throws IOException {
+        byte[] buffer = connection.scratch;
+        long remaining = length;
+        while (remaining > 0) {
+            int read = connection.in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new EOFException("Connection closed with " + remaining + " bytes of the body remaining");
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static void copyToEnd(PooledConnection connection, OutputStream out) throws IOException {
+        byte[] buffer = connection.scratch;
+        int read;
+        while ((read = connection.in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static class PooledConnection {
+        final Socket socket;
+        final InputStream in;
+        final OutputStream out;
+        final byte[] scratch = new byte[8192]; // for copying response bodies
+        volatile long expiresAt;
+
+        PooledConnection(Socket socket, long expiresAt) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+            this.expiresAt = expiresAt;
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Frames everything written to it as HTTP/1.1 chunks
+    private static class ChunkedOutputStream extends FilterOutputStream {
+        ChunkedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            writeAscii(out, "1\r\n");
+            out.write(b);
+            writeAscii(out, "\r\n");
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                // A zero-length chunk would end the body
+                return;
+            }
+            writeAscii(out, Integer.toHexString(len));
+            writeAscii(out, "\r\n");
+            out.write(b, off, len);
+            writeAscii(out, "\r\n");
+        }
+
+        void finish() throws IOException {
+            writeAscii(out, "0\r\n\r\n");
+        }
+    }
+
+    private static class StaleConnectionException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StaleConnectionException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package net.mcmetrics.shared.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A request body the transport writes straight to the connection. Bodies must be repeatable,
+ * since a request may be written again on a fresh connection if a pooled one turns out stale.
+ */
+public interface RequestBody {
+
+    /**
+     * Length of the body in bytes, or -1 if unknown, in which case it is sent with chunked encoding.
+     */
+    long contentLength() throws IOException;
+
+    void writeTo(OutputStream out) throws IOException;
+
+    static RequestBody of(byte[] bytes) {
+        return new RequestBody() {
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(bytes);
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package net.mcmetrics.shared.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transport on top of {@link HttpURLConnection}, for servers that reach the API through a proxy
+ * configured on the JVM. Connections are still kept alive by the JVM's own cache, since bodies are
+ * always read to the end and {@code disconnect()} is never called, but it can't warm up connections
+ * or report pool hits.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+    private final String baseUrl;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    public UrlConnectionTransport(String baseUrl) {
+        this(baseUrl, PooledHttpTransport.DEFAULT_CONNECT_TIMEOUT_MS, PooledHttpTransport.DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    public UrlConnectionTransport(String baseUrl, int connectTimeoutMs, int readTimeoutMs) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    @Override
+    public HttpResponse execute(String method, String path, Map<String, String> headers, RequestBody body,
+            boolean discardResponseBody) throws IOException {
+        long startNanos = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setConnectTimeout(connectTimeoutMs);
+        connection.setReadTimeout(readTimeoutMs);
+        connection.setRequestMethod(method);
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
+        if (body != null) {
+            connection.setDoOutput(true);
+            // Streaming also stops HttpURLConnection from silently sending a POST a second time
+            long contentLength = body.contentLength();
+            if (contentLength >= 0) {
+                connection.setFixedLengthStreamingMode(contentLength);
+            } else {
+                connection.setChunkedStreamingMode(0);
+            }
+            try (OutputStream out = connection.getOutputStream()) {
+                body.writeTo(out);
+            }
+        }
+
+        int statusCode = connection.getResponseCode();
+        long timeToFirstByte = System.nanoTime() - startNanos;
+
+        Map<String, String> responseHeaders = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null) {
+                responseHeaders.put(header.getKey().toLowerCase(), String.join(", ", header.getValue()));
+            }
+        }
+
+        // Read to the end either way, otherwise the connection can't go back to the keep-alive cache
+        ByteArrayOutputStream responseBody = discardResponseBody && statusCode / 100 == 2
+                ? null
+                : new ByteArrayOutputStream();
+        InputStream in = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (responseBody != null) {
+                        responseBody.write(buffer, 0, read);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        return new HttpResponse(statusCode, responseHeaders,
+                responseBody != null ? responseBody.toByteArray() : null, -1, timeToFirstByte,
+                System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public void warmUp(int connections) {
+        // The JVM opens connections on first use
+    }
+
+    @Override
+    public long getPoolHits() {
+        return 0;
+    }
+
+    @Override
+    public long getPoolMisses() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        // Idle connections belong to the JVM-wide keep-alive cache
+    }
+}
@@ -9,10 +9,12 @@ import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
 import net.mcmetrics.plugin.commands.MCMetricsCommand;
 import net.mcmetrics.plugin.listeners.PlayerSessionListener;
+import net.mcmetrics.shared.ApiSettings;
 import net.mcmetrics.shared.MCMetricsAPI;
 import net.mcmetrics.shared.config.ConfigManager;
 import net.mcmetrics.shared.models.ServerPing;
 import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.session.SessionManager;
 
 import com.velocitypowered.api.command.CommandMeta;
 import com.velocitypowered.api.command.SimpleCommand;
@@ -28,6 +30,8 @@ import java.util.logging.Logger;
 @Plugin(id = "mcmetrics", name = "MCMetrics", version = "@VERSION@", description = "The MCMetrics Velocity plugin", authors = {
         "MCMetrics Team" })
 public class MCMetricsVelocityPlugin {
+    private static final long SHUTDOWN_TIMEOUT_MS = 30000;
+
     private final ProxyServer server;
     private final Logger logger;
     private final Path dataDirectory;
@@ -48,8 +52,8 @@ public class MCMetricsVelocityPlugin {
         try {
             InputStream defaultConfig = getClass().getResourceAsStream("/config.yml");
             configManager.loadConfig("main", dataDirectory.toFile(), "config.yml", defaultConfig, logger);
+            sessionManager = new SessionManager();
             initializeAPI();
-            sessionManager = new SessionManager(api);
 
             server.getEventManager().register(this, new PlayerSessionListener(this, sessionManager));
 
@@ -70,6 +74,9 @@ public class MCMetricsVelocityPlugin {
 
     @Subscribe
     public void onProxyShutdown(ProxyShutdownEvent event) {
+        // Sessions and the final flush share one deadline, so stopping never waits on the API for long
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+
         if (sessionManager != null) {
             List<Session> remainingSessions = sessionManager.endAllSessions();
             if (!remainingSessions.isEmpty()) {
@@ -79,11 +86,11 @@ public class MCMetricsVelocityPlugin {
                 Date endTime = new Date();
                 remainingSessions.forEach(session -> session.session_end = endTime);
 
-                // Upload sessions asynchronously in batches
+                // Upload sessions in bulk; whatever misses the deadline is sent on the next startup
                 if (api != null) {
                     try {
-                        api.insertSessionsBatch(remainingSessions, 5, 20) // 5 sessions per batch, 20 second timeout
-                                .get(25, TimeUnit.SECONDS); // Wait up to 25 seconds for all uploads to complete
+                        api.insertSessionsBatch(remainingSessions, 50, 20) // 50 sessions per request, 20 second deadline
+                                .get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
                         logger.info("Successfully uploaded all remaining sessions during shutdown");
                     } catch (Exception e) {
                         logger.warning("Failed to upload some sessions during shutdown: " + e.getMessage());
@@ -93,7 +100,7 @@ public class MCMetricsVelocityPlugin {
         }
 
         if (api != null) {
-            api.shutdown();
+            api.shutdown(Math.max(0, deadline - System.currentTimeMillis()));
         }
         logger.info("MCMetrics plugin disabled.");
     }
@@ -108,7 +115,15 @@ public class MCMetricsVelocityPlugin {
             return;
         }
 
-        api = new MCMetricsAPI(serverId, serverKey, logger);
+        // The new instance takes over the old one's outbox, so the old one can send what it has left
+        // in the background instead of holding up the reload
+        MCMetricsAPI previous = api;
+        api = new MCMetricsAPI(serverId, serverKey, logger,
+                ApiSettings.fromConfig(configManager, "main", dataDirectory.toFile(), logger), previous);
+        api.setSessionManager(sessionManager);
+        if (previous != null) {
+            previous.shutdownInBackground();
+        }
     }
 
     private void startServerPingTask() {
@@ -7,11 +7,13 @@ import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextDecoration;
 import net.mcmetrics.plugin.MCMetricsVelocityPlugin;
-import net.mcmetrics.plugin.SessionManager;
 import net.mcmetrics.shared.MCMetricsAPI;
+import net.mcmetrics.shared.metrics.EndpointLatency;
 import net.mcmetrics.shared.models.CustomEvent;
 import net.mcmetrics.shared.models.Payment;
 import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.pipeline.TrafficClass;
+import net.mcmetrics.shared.session.SessionManager;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -242,6 +244,69 @@ public class MCMetricsCommand implements SimpleCommand {
                 .append(Component.text(api.getRequestCount()).color(NamedTextColor.WHITE)));
         source.sendMessage(Component.text("API errors in the last hour: ").color(NamedTextColor.GRAY)
                 .append(Component.text(api.getErrorCount()).color(NamedTextColor.WHITE)));
+        source.sendMessage(Component.text("Circuit breaker: ").color(NamedTextColor.GRAY)
+                .append(Component.text(api.getCircuitState().toString()).color(NamedTextColor.WHITE))
+                .append(Component.text(" (tripped ").color(NamedTextColor.GRAY))
+                .append(Component.text(api.getCircuitTripCount()).color(NamedTextColor.WHITE))
+                .append(Component.text(" times, held requests: ").color(NamedTextColor.GRAY))
+                .append(Component.text(api.getHeldRequestCount()).color(NamedTextColor.WHITE))
+                .append(Component.text(")").color(NamedTextColor.GRAY)));
+        source.sendMessage(Component.text("Connections reused/opened: ").color(NamedTextColor.GRAY)
+                .append(Component.text(api.getConnectionPoolHits() + "/" + api.getConnectionPoolMisses())
+                        .color(NamedTextColor.WHITE)));
+        source.sendMessage(Component.text("Events waiting to be batched: ").color(NamedTextColor.GRAY)
+                .append(Component.text(api.getPendingEventCount()).color(NamedTextColor.WHITE)));
+        source.sendMessage(Component.text("Events over the rate limits: ").color(NamedTextColor.GRAY)
+                .append(Component.text(api.getSuppressedEventCount()).color(NamedTextColor.WHITE)));
+        source.sendMessage(Component.text("Request queue: ").color(NamedTextColor.GRAY)
+                .append(Component.text(api.getQueuedRequestCount() + "/" + api.getRequestQueueCapacity())
+                        .color(NamedTextColor.WHITE))
+                .append(Component.text(" (active workers: ").color(NamedTextColor.GRAY))
+                .append(Component.text(api.getActiveWorkerCount()).color(NamedTextColor.WHITE))
+                .append(Component.text(")").color(NamedTextColor.GRAY)));
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            source.sendMessage(Component.text("  " + trafficClass + ": ").color(NamedTextColor.GRAY)
+                    .append(Component.text(api.getQueuedRequestCount(trafficClass) + "/"
+                            + api.getRequestQueueCapacity(trafficClass)).color(NamedTextColor.WHITE))
+                    .append(Component.text(" queued, ").color(NamedTextColor.GRAY))
+                    .append(Component.text(api.getActiveWorkerCount(trafficClass) + "/"
+                            + api.getMaxWorkerCount(trafficClass)).color(NamedTextColor.WHITE))
+                    .append(Component.text(" workers, ").color(NamedTextColor.GRAY))
+                    .append(Component.text(api.getRejectedRequestCount(trafficClass)).color(NamedTextColor.WHITE))
+                    .append(Component.text(" dropped").color(NamedTextColor.GRAY)));
+        }
+        source.sendMessage(Component.text("Retried requests: ").color(NamedTextColor.GRAY)
+                .append(Component.text(api.getRetriedRequestCount()).color(NamedTextColor.WHITE))
+                .append(Component.text(" (waiting to retry: ").color(NamedTextColor.GRAY))
+                .append(Component.text(api.getWaitingRetryCount()).color(NamedTextColor.WHITE))
+                .append(Component.text(")").color(NamedTextColor.GRAY)));
+        source.sendMessage(Component.text("Dropped requests: ").color(NamedTextColor.GRAY)
+                .append(Component.text(api.getRejectedRequestCount()).color(NamedTextColor.WHITE))
+                .append(Component.text(" (kept in outbox: ").color(NamedTextColor.GRAY))
+                .append(Component.text(api.getSpilledRequestCount()).color(NamedTextColor.WHITE))
+                .append(Component.text(")").color(NamedTextColor.GRAY)));
+        source.sendMessage(Component.text("Outbox: ").color(NamedTextColor.GRAY)
+                .append(Component.text(api.getOutboxSizeBytes() / 1024 + " KB").color(NamedTextColor.WHITE))
+                .append(Component.text(" on disk (re-sent: ").color(NamedTextColor.GRAY))
+                .append(Component.text(api.getReplayedEventCount()).color(NamedTextColor.WHITE))
+                .append(Component.text(", not saved: ").color(NamedTextColor.GRAY))
+                .append(Component.text(api.getUnsavedEventCount()).color(NamedTextColor.WHITE))
+                .append(Component.text(")").color(NamedTextColor.GRAY)));
+
+        Map<String, EndpointLatency> latencies = api.getEndpointLatencies();
+        source.sendMessage(Component.text("Latency p50/p95/p99:").color(NamedTextColor.GRAY)
+                .append(Component.text(latencies.isEmpty() ? " no requests yet" : "").color(NamedTextColor.WHITE)));
+        for (Map.Entry<String, EndpointLatency> entry : latencies.entrySet()) {
+            EndpointLatency latency = entry.getValue();
+            source.sendMessage(Component.text("  " + entry.getKey() + ": ").color(NamedTextColor.GRAY)
+                    .append(Component.text(latency.getTotal().formatPercentiles()).color(NamedTextColor.WHITE))
+                    .append(Component.text(" (first byte ").color(NamedTextColor.GRAY))
+                    .append(Component.text(latency.getTimeToFirstByte().formatPercentiles())
+                            .color(NamedTextColor.WHITE))
+                    .append(Component.text(", connect ").color(NamedTextColor.GRAY))
+                    .append(Component.text(latency.getConnect().formatPercentiles()).color(NamedTextColor.WHITE))
+                    .append(Component.text(")").color(NamedTextColor.GRAY)));
+        }
     }
 
     private void handleInfo(CommandSource source, String playerName) {
@@ -273,9 +338,9 @@ public class MCMetricsCommand implements SimpleCommand {
         source.sendMessage(Component.text("IP Address: ").color(NamedTextColor.GRAY)
                 .append(Component.text(session.ip_address).color(NamedTextColor.WHITE)));
 
-        Map<String, Integer> groupedEvents = sessionManager.getGroupedCustomEvents(playerId);
+        Map<String, Long> groupedEvents = sessionManager.getGroupedCustomEvents(playerId);
         source.sendMessage(Component.text("Custom events this session:").color(NamedTextColor.GRAY));
-        for (Map.Entry<String, Integer> entry : groupedEvents.entrySet()) {
+        for (Map.Entry<String, Long> entry : groupedEvents.entrySet()) {
             source.sendMessage(Component.text("  " + entry.getKey() + ": ").color(NamedTextColor.WHITE)
                     .append(Component.text(entry.getValue() + " times").color(NamedTextColor.GRAY)));
         }
@@ -6,8 +6,8 @@ import com.velocitypowered.api.event.connection.LoginEvent;
 import com.velocitypowered.api.event.connection.PostLoginEvent;
 import com.velocitypowered.api.proxy.Player;
 import net.mcmetrics.plugin.MCMetricsVelocityPlugin;
-import net.mcmetrics.plugin.SessionManager;
 import net.mcmetrics.shared.models.Session;
+import net.mcmetrics.shared.session.SessionManager;
 
 import java.net.InetSocketAddress;
 import java.util.Date;